@@ -0,0 +1,99 @@
+/** ========================================== ArcPolicy.java ==============================================
+ * SUMMARY
+ * Adaptive replacement cache (Megiddo and Modha). T1 holds blocks hit
+ * once, T2 blocks hit at least twice, and B1 / B2 remember the numbers of
+ * blocks recently evicted from each. A miss found in B1 says T1 was too
+ * small and grows its target p; one found in B2 shrinks it, so the split
+ * between recent and frequent blocks follows the workload.
+ */
+
+public class ArcPolicy implements CachePolicy {
+    private final static int T1 = 0, T2 = 1;   // resident lists
+    private final static int B1 = 0, B2 = 1;   // ghost lists
+
+    private SlotList resident;   // least recently used first
+    private GhostList ghosts;
+    private int blockOf[];
+    private int frames;          // c
+    private int target;          // p, the size T1 aims for
+
+    public ArcPolicy( int frames ) {
+        this.frames = frames;
+        resident = new SlotList( frames, 2 );
+        ghosts = new GhostList( frames, 2 );
+        blockOf = new int[frames];
+        target = 0;
+    }
+
+    public String name( ) {
+        return "arc";
+    }
+
+    public int victim( int blockId, Frames candidates ) {
+        int first1 = first( T1, candidates ), first2 = first( T2, candidates );
+        if ( first1 == NONE && first2 == NONE )
+            return NONE;
+        int t1 = resident.size( T1 );
+        int b1 = ghosts.size( B1 ), b2 = ghosts.size( B2 );
+        int ghost = ghosts.listOf( blockId );
+        if ( ghost == B1 )
+            target = Math.min( frames, target + Math.max( b2 / b1, 1 ) );
+        else if ( ghost == B2 )
+            target = Math.max( 0, target - Math.max( b1 / b2, 1 ) );
+        else if ( t1 + b1 >= frames ) {
+            if ( t1 >= frames ) {
+                resident.remove( first1 );   // dropped, not remembered
+                return first1;
+            }
+            ghosts.removeOldest( B1 );
+        } else if ( t1 + b1 + resident.size( T2 ) + b2 >= 2 * frames )
+            ghosts.removeOldest( B2 );
+        return replace( ghost == B2, first1, first2 );
+    }
+
+    // evicts from T1 if it is over target, otherwise from T2; a list whose
+    // frames may not go gives way to the other
+    private int replace( boolean inB2, int first1, int first2 ) {
+        int t1 = resident.size( T1 );
+        int frame;
+        if ( first1 != NONE && ( first2 == NONE || t1 > target
+                                 || ( inB2 && t1 == target ) ) ) {
+            frame = first1;
+            ghosts.add( B1, blockOf[frame] );
+        } else {
+            frame = first2;
+            ghosts.add( B2, blockOf[frame] );
+        }
+        resident.remove( frame );
+        return frame;
+    }
+
+    // least recently used frame of list that may go, or NONE
+    private int first( int list, Frames candidates ) {
+        int frame = resident.first( list );
+        while ( frame != NONE && !candidates.evictable( frame ) )
+            frame = resident.next( frame );
+        return frame;
+    }
+
+    public void inserted( int frame, int blockId ) {
+        blockOf[frame] = blockId;
+        if ( ghosts.listOf( blockId ) != SlotList.NONE ) {
+            ghosts.remove( blockId );
+            resident.addLast( T2, frame );
+        } else
+            resident.addLast( T1, frame );
+    }
+
+    public void referenced( int frame ) {
+        resident.addLast( T2, frame );
+    }
+
+    public void dirtied( int frame ) { }
+
+    public void cleaned( int frame ) { }
+
+    public void removed( int frame ) {
+        resident.remove( frame );
+    }
+}
@@ -0,0 +1,17 @@
+/** ========================================== BlockDevice.java ==============================================
+ * SUMMARY
+ * What the Kernel needs from the device behind RAWREAD, RAWWRITE and SYNC:
+ * a single Disk, or an array of Disks presented as one volume.
+ */
+
+public interface BlockDevice {
+
+    // starts the device's service thread(s)
+    void start( );
+
+    // queues a request; returns null if it names a block not on the device
+    DiskRequest submit( DiskRequest request );
+
+    // appends the I/O statistics of every underlying Disk
+    void report( StringBuffer out );
+}
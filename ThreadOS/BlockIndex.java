@@ -0,0 +1,107 @@
+/** ========================================== BlockIndex.java ==============================================
+ * SUMMARY
+ * Maps a disk block number to the cache frame holding it. Open addressing
+ * with linear probing over plain int arrays, so a lookup costs a hash and a
+ * short probe instead of a scan of every frame, and nothing is boxed.
+ * Removal shifts later entries of the probe chain back, so no tombstones
+ * build up as blocks come and go. The table doubles if it gets more than
+ * half full.
+ */
+
+public class BlockIndex {
+    public final static int MISSING = -1; // get( ) of a block not held
+    private final static int NONE = -1;   // key of an unused slot
+
+    private int keys[];     // block numbers, NONE if unused
+    private int values[];   // frame of keys[i]
+    private int mask;       // keys.length - 1, a power of two
+    private int size;       // # entries
+
+    // sized for up to capacity entries at most half full
+    public BlockIndex( int capacity ) {
+        int slots = 2;
+        while ( slots < capacity * 2 )
+            slots <<= 1;
+        allocate( slots );
+    }
+
+    private void allocate( int slots ) {
+        keys = new int[slots];
+        values = new int[slots];
+        mask = slots - 1;
+        clear( );
+    }
+
+    // returns the frame holding blockId, or MISSING
+    public int get( int blockId ) {
+        for ( int i = slot( blockId ); keys[i] != NONE; i = ( i + 1 ) & mask )
+            if ( keys[i] == blockId )
+                return values[i];
+        return MISSING;
+    }
+
+    // records that frame now holds blockId
+    public void put( int blockId, int frame ) {
+        int i = slot( blockId );
+        while ( keys[i] != NONE && keys[i] != blockId )
+            i = ( i + 1 ) & mask;
+        if ( keys[i] == NONE ) {
+            if ( ( size + 1 ) * 2 > keys.length ) {
+                grow( );
+                put( blockId, frame );
+                return;
+            }
+            size++;
+        }
+        keys[i] = blockId;
+        values[i] = frame;
+    }
+
+    private void grow( ) {
+        int oldKeys[] = keys, oldValues[] = values;
+        allocate( keys.length * 2 );
+        for ( int i = 0; i < oldKeys.length; i++ )
+            if ( oldKeys[i] != NONE )
+                put( oldKeys[i], oldValues[i] );
+    }
+
+    // forgets blockId, if present
+    public void remove( int blockId ) {
+        int i = slot( blockId );
+        while ( keys[i] != blockId ) {
+            if ( keys[i] == NONE )
+                return;
+            i = ( i + 1 ) & mask;
+        }
+        // pull back any later entry that can no longer be reached past i
+        int j = i;
+        while ( true ) {
+            j = ( j + 1 ) & mask;
+            if ( keys[j] == NONE )
+                break;
+            int home = slot( keys[j] );
+            if ( ( ( j - home ) & mask ) >= ( ( j - i ) & mask ) ) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = NONE;
+        size--;
+    }
+
+    public int size( ) {
+        return size;
+    }
+
+    public void clear( ) {
+        java.util.Arrays.fill( keys, NONE );
+        size = 0;
+    }
+
+    // spreads consecutive block numbers over the table
+    private int slot( int blockId ) {
+        int h = blockId * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+}
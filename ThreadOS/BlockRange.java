@@ -0,0 +1,26 @@
+/** ========================================== BlockRange.java ==============================================
+ * SUMMARY
+ * Arguments of a byte range read or write of one cached block: bytes
+ * from .. from + length - 1 of the block and buffer[offset ..]. The
+ * block number travels as the syscall's param. pread and pwrite use it
+ * too, with from as the offset in the file and fd as the param, and
+ * cprefetch passes its block count as length. SysLib keeps one per thread
+ * and refills it for every call, so a small read or write of a file
+ * allocates nothing.
+ */
+
+public class BlockRange {
+    byte buffer[];     // bytes read into or written from
+    int offset;        // of byte from in buffer[]
+    int from;          // first byte of the block, or of the file
+    int length;        // # bytes
+
+    // refills this range and returns it
+    BlockRange set( int from, byte buffer[], int offset, int length ) {
+        this.from = from;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+}
@@ -7,7 +7,10 @@ public class Boot
 
     public static void main ( String args[] ) {
 	SysLib.cerr( "threadOS ver 2.0:\n" );
-	SysLib.boot( );
+	if ( SysLib.boot( args ) != OK ) {
+	    SysLib.cerr( "threadOS: boot failed\n" );
+	    System.exit( 1 );
+	}
 	SysLib.cerr( "Type ? for help\n" );
 
 	String[] loader = new String[1];
@@ -4,231 +4,737 @@
  * CSS 430 - Programming Assingment 4
  *
  * PURPOSE OF FILE
- * This file's purpose serves to implement disk caching baseed upon the approach 
- * of using an Enhanced Second Chance Algorithm (ESCA).
+ * This file's purpose serves to implement disk caching baseed upon the approach
+ * of using an Enhanced Second Chance Algorithm (ESCA), or another
+ * CachePolicy chosen at boot.
+ *
+ * Every block the file system touches (superblock, inodes, indirect blocks,
+ * the free list, directory and file data) goes through this cache. Runs of
+ * several blocks bypass the frames but stay coherent with them.
+ *
+ * The frames are split into CacheSegments, each with its own lock; a block
+ * number always hashes to the same segment. There is no cache-wide lock,
+ * so lookups of blocks in different segments, and a miss waiting on the
+ * disk, do not hold each other up.
+ *
+ * A CacheFlusher thread writes dirty blocks back ahead of eviction, so a
+ * miss usually finds a clean victim and does not wait behind its write.
+ * In the other direction, prefetch reads blocks a sequential reader is
+ * about to need into frames without waiting for them.
+ *
+ * The data of all frames is kept in one FrameStore, on the heap or, for
+ * very large caches, off it. pin lends a view of a frame's data instead of
+ * copying the block, for callers that need only a few bytes of it.
+ *
+ * resize rebuilds the segments with a new number of frames while the
+ * system runs. Every operation holds a read lock on the layout, and a
+ * resize holds the write lock, so it waits for operations and pins in
+ * progress and the ones after it wait for the new layout. Dirty blocks
+ * are written back first; the hottest blocks are copied over. With a
+ * CacheSizer the cache measures itself and is resized automatically.
  */
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Cache {
 
-    // Singleton
-    CacheBlock[] myCache; 
-    
+    // Segments
+	private CacheSegment[] segments;
+	private int segmentShift;						// 32 - log2(segments)
+
     // Reassignable values
-	private int victim;								// ID of victim block
-	private int target;								// Target Data Block
 	private int blockSize;							// Size of curent block
     private int pageSize;							// Size of Cache Array
-    
-    // ERROR CODES
-    private int EMPTY;      // -1
-    private int INVALID;    // -2
+	private String policyName;
+	private FrameStore store;						// data of every frame
+	private AtomicLong writebacks;					// cached blocks written
+	private AtomicInteger dirtyFrames;				// # dirty frames
+	private volatile CacheFlusher flusher;			// null until started
+	private Object writeBackLock = new Object();	// one writeBack at a time
+	private int maxRun;								// blocks in one write
+	private int maxPrefetch;						// blocks in one prefetch
+	private ThreadLocal<Prefetch> prefetches		// each thread's scratch
+		= ThreadLocal.withInitial(() -> new Prefetch(maxPrefetch));
+	private ThreadLocal<Pins> pinned				// each thread's pins
+		= ThreadLocal.withInitial(Pins::new);
+	private boolean offHeap;
+	private boolean adaptive;						// segments measure for a sizer
+	private ReentrantReadWriteLock layout = new ReentrantReadWriteLock();
+	private Lock using = layout.readLock();		// held by every operation
+	private int resizes;
+	private long[] retired = new long[6];			// stats of replaced segments
 
-    // -------------------------------------------------------------------------
-    //! private CacheBlock 
-	private class CacheBlock{
-		byte[] dataBlock;
-		int blockFrame;
-		boolean referenceBit;
-		boolean dirtyBit;
-
-        /**
-         *! private Constructor
-         * @param blockSize
-         */
-		private CacheBlock(int blockSize){
-			dataBlock = new byte[blockSize];		
-			blockFrame = EMPTY;						
-			referenceBit = false;					
-			dirtyBit = false;						
-		}
-	}
+    // Frames per segment the default striping aims for
+	private final int FRAMES_PER_SEGMENT = 64;
+	private final int MAX_SEGMENTS = 64;
 
     // -------------------------------------------------------------------------
-    //! public Constructor 
+    //! public Constructor
     /**
      * Cache[] const
      * @param block_Size of each block in Cache
      * @param cacheBlock static size of Cache
+     * @param policy name of the replacement policy, one per segment
+     * @param offHeap keep the frames' data outside the Java heap
+     * @param adaptive measure hit rates for a CacheSizer
      */
-	public Cache(int block_Size, int cacheBlock){
-		myCache = new CacheBlock[cacheBlock];		
-		pageSize = myCache.length;					
-		blockSize = block_Size;						
-		victim = cacheBlock-1;						
-		for(int i = 0; i < pageSize; i++){
-			myCache[i] = new CacheBlock(block_Size);
-		} 
+	public Cache(int block_Size, int cacheBlock, String policy, boolean offHeap,
+				 boolean adaptive){
+		blockSize = block_Size;
+		policyName = policy;
+		this.offHeap = offHeap;
+		this.adaptive = adaptive;
+		writebacks = new AtomicLong();
+		dirtyFrames = new AtomicInteger();
+		maxRun = Math.max(1, (1 << 20) / blockSize);
+		build(cacheBlock);
 	}
 
     // -------------------------------------------------------------------------
-    //! public bool read 
+    //! private build
+    /**
+     *  Lays out cacheBlock empty frames over a power of two segments, each
+     *  at least FRAMES_PER_SEGMENT frames
+     *  @param cacheBlock
+     */
+	private void build(int cacheBlock){
+		pageSize = cacheBlock;
+		maxPrefetch = Math.min(maxRun, Math.max(1, pageSize / 4));
+		String policy = policyName;
+
+		int count = 1;
+		while(count * 2 <= MAX_SEGMENTS && count * 2 * FRAMES_PER_SEGMENT <= pageSize){
+			count *= 2;
+		}
+		segments = new CacheSegment[count];
+		segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+		store = new FrameStore(pageSize, blockSize, offHeap);
+		for(int i = 0, base = 0; i < count; i++){
+			int frames = pageSize / count + (i < pageSize % count ? 1 : 0);
+			CachePolicy replacement = CachePolicy.forName(policy, frames);
+			policyName = replacement.name();
+			segments[i] = new CacheSegment(blockSize, frames, replacement,
+										   this, store, base, adaptive);
+			base += frames;
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool read
     /**
      *  Reads into buffer[] of cache block by blockId
      *  @param blockId
      *  @param buffer
      *  @return false if invalid, otherwise true if found
      */
-	public synchronized boolean read(int blockId, byte[] buffer){
+	public boolean read(int blockId, byte[] buffer){
     //  Invalid blockId
-		if(blockId < 0){ return false; }			
-	//  Look for existing blockId	
-		target = find(blockId);					
-		if(target != INVALID){ 						
-			fromCache(target, blockId, buffer);	
-			return true; 
-        }
-    //  Look for empty blockId
-		target = find(EMPTY);					
-		if(target != INVALID){ 						
-			SysLib.rawread(blockId, myCache[target].dataBlock); 
-			fromCache(target, blockId, buffer);	
+		if(blockId < 0){ return false; }
+		using.lock();
+		try {
+			segmentOf(blockId).access(blockId, 0, buffer, 0, blockSize, false);
 			return true;
-        }
-    //  Otherwise, find next victim		
-		toDisk(nextVictim());					
-		SysLib.rawread(blockId, myCache[victim].dataBlock);	 
-       	fromCache(victim, blockId, buffer);		    	
-		return true;
+		} finally {
+			using.unlock();
+		}
 	}
 
     // -------------------------------------------------------------------------
-    //! public boolean write 
+    //! public boolean write
     /**
-     *  Writes to buffer[] of cache at blockId 
+     *  Writes to buffer[] of cache at blockId
      *  @param blockId
      *  @param buffer
      *  @return true if added, otherwise false if invalid
      */
-	public synchronized boolean write(int blockId, byte[] buffer){
+	public boolean write(int blockId, byte[] buffer){
     //  Invalid blockId
-		if(blockId < 0){ return false; }			
-    //  Look for existing blockId
-		target = find(blockId);					
-		if(target != INVALID){ 						
-			toCache(target, blockId, buffer);	
-			return true; 
-        }		
-    //  Look for empty blockFrame
-		target = find(EMPTY);					
-		if(target != INVALID){ 						
-			toCache(target, blockId, buffer);	
-			return true; 
-        }		
-    //  Otherwise, find victim
-		toDisk(nextVictim());					
-		toCache(victim, blockId, buffer);		
-		return true;								
-	}
-
-    // -------------------------------------------------------------------------
-    //! public sync 
-    /**
-     *  Maintains clean block copies.
-     */	
-	public synchronized void sync(){
-		for(int i = 0; i < pageSize; i++) { toDisk(i); }
-		SysLib.sync();								
+		if(blockId < 0){ return false; }
+		using.lock();
+		try {
+			segmentOf(blockId).access(blockId, 0, buffer, 0, blockSize, true);
+			return true;
+		} finally {
+			using.unlock();
+		}
 	}
 
     // -------------------------------------------------------------------------
-    // flush 
+    //! public bool read range
     /**
-     *  Invalidating all cached blocks
-     */	
-	public synchronized void flush(){
-		for(int i = 0; i < pageSize; i++){			
-			toDisk(i);							
-			updateCache(i, EMPTY, false);			
-		}	
-		SysLib.sync();								
+     *  Reads bytes from .. from + length - 1 of cache block blockId into
+     *  buffer[offset ..]
+     *  @return false if invalid, otherwise true
+     */
+	public boolean read(int blockId, int from, byte[] buffer, int offset, int length){
+		if(!inRange(blockId, from, buffer, offset, length)){ return false; }
+		using.lock();
+		try {
+			segmentOf(blockId).access(blockId, from, buffer, offset, length, false);
+			return true;
+		} finally {
+			using.unlock();
+		}
 	}
+
     // -------------------------------------------------------------------------
-    //! private int find 
+    //! public bool write range
     /**
-     *  Reduces repetativeness and locates prospective value
-     *  @param prospect compared to blockFrame (int)
-     *  @return index or -2 if not found
-     */	
-	private int find(int prospect){
-		for(int i = 0; i < pageSize; i++){			
-			if(myCache[i].blockFrame == prospect){	
-				return i;							
-			}
+     *  Overwrites bytes from .. from + length - 1 of cache block blockId
+     *  from buffer[offset ..]. The rest of the block is not read from disk
+     *  unless something needs it before it is written back.
+     *  @return false if invalid, otherwise true
+     */
+	public boolean write(int blockId, int from, byte[] buffer, int offset, int length){
+		if(!inRange(blockId, from, buffer, offset, length)){ return false; }
+		using.lock();
+		try {
+			segmentOf(blockId).access(blockId, from, buffer, offset, length, true);
+			return true;
+		} finally {
+			using.unlock();
 		}
-		return INVALID;								
+	}
+
+	private boolean inRange(int blockId, int from, byte[] buffer, int offset, int length){
+		return blockId >= 0 && from >= 0 && length > 0 && from + length <= blockSize
+			&& offset >= 0 && offset + length <= buffer.length;
 	}
 
     // -------------------------------------------------------------------------
-    //! public toCache 
+    //! public ByteBuffer pin
     /**
-     *? Read and Write
-     *  Copies buffer[] to cache, sets as dirtyBit, updates as referenced
-     *  @param target 
+     *  Brings blockId into the cache and lends out a view of its frame,
+     *  which stays put until unpin. Changes through a writable view are
+     *  seen by every reader of the block at once, and written back after
+     *  unpin. Callers must not pin a block while holding a pin. The
+     *  pinning thread holds the layout's read lock until it unpins, so a
+     *  resize waits for the view to be released.
      *  @param blockId
-     *  @param buffer
+     *  @param write true for a writable view
+     *  @return the view, or null if invalid
      */
-	private void toCache(int target, int blockId, byte[] buffer){
-		System.arraycopy(buffer, 0, myCache[target].dataBlock, 0, blockSize);
-		myCache[target].dirtyBit = true;			
-		updateCache(target, blockId, true);
+	public ByteBuffer pin(int blockId, boolean write){
+		if(blockId < 0){ return null; }
+		using.lock();
+		ByteBuffer view;
+		try {
+			CacheSegment segment = segmentOf(blockId);
+			view = segment.view(segment.access(blockId, 0, null, 0, blockSize, write),
+								write);
+		} catch(RuntimeException | Error e){
+			using.unlock();
+			throw e;
+		}
+		pinned.get().add(blockId, write);
+		return view;
 	}
 
     // -------------------------------------------------------------------------
-    //! public fromCache 
+    //! public bool unpin
     /**
-     *? Read Only
-     *  Copies buffer[] to cache, then updates as referenced
-     *  @param target
+     *  Releases a view taken by pin, from the thread that pinned it. An
+     *  unpin that matches no pin of this thread changes nothing.
      *  @param blockId
-     *  @param buffer
+     *  @param view as returned by pin
+     *  @return false if this thread holds no such pin
+     */
+	public boolean unpin(int blockId, ByteBuffer view){
+		if(blockId < 0 || view == null){ return false; }
+		boolean write = !view.isReadOnly();
+		if(!pinned.get().remove(blockId, write)){ return false; }
+		segmentOf(blockId).unpin(blockId, write);
+		using.unlock();
+		return true;
+	}
+
+    // -------------------------------------------------------------------------
+    //! private Pins
+    /**
+     *  The blocks a thread holds pinned, most recent last, so unpin can
+     *  tell its own pins from a wrong block or another thread's view
+     */
+	private static class Pins {
+		int[] blocks = new int[2];
+		boolean[] writable = new boolean[2];
+		int count;
+
+		void add(int blockId, boolean write){
+			if(count == blocks.length){
+				blocks = Arrays.copyOf(blocks, count * 2);
+				writable = Arrays.copyOf(writable, count * 2);
+			}
+			blocks[count] = blockId;
+			writable[count++] = write;
+		}
+
+		// forgets the latest pin of blockId with that kind of view
+		boolean remove(int blockId, boolean write){
+			for(int i = count - 1; i >= 0; i--){
+				if(blocks[i] == blockId && writable[i] == write){
+					count--;
+					System.arraycopy(blocks, i + 1, blocks, i, count - i);
+					System.arraycopy(writable, i + 1, writable, i, count - i);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool resize
+    /**
+     *  Rebuilds the cache with a new number of frames. Waits for every
+     *  operation and pin in progress, writes all dirty blocks back, then
+     *  copies the hottest blocks that fit into the new frames.
+     *  @param cacheBlock # frames from now on
+     *  @return false if invalid
+     */
+	public boolean resize(int cacheBlock){
+		if(cacheBlock <= 0){ return false; }
+		layout.writeLock().lock();
+		try {
+			if(cacheBlock == pageSize){ return true; }
+			writeBack(Long.MAX_VALUE);
+			for(int i = 0; i < segments.length; i++){
+				segments[i].awaitIdle();
+			}
+			int[] keep = new int[Math.min(cacheBlock, pageSize)];
+			int count = hottest(keep);
+
+			CacheSegment[] old = segments;
+			int oldShift = segmentShift;
+			for(int i = 0; i < old.length; i++){
+				retire(old[i]);
+			}
+			build(cacheBlock);
+			byte[] block = new byte[blockSize];
+			for(int i = 0; i < count; i++){
+				old[segmentIndex(keep[i], oldShift)].overlay(keep[i], block, 0);
+				segmentOf(keep[i]).adopt(keep[i], block);
+			}
+			resizes++;
+			return true;
+		} finally {
+			layout.writeLock().unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public int size
+    /**
+     *  @return # frames
+     */
+	public int size(){
+		return pageSize;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public sample
+    /**
+     *  Ends a measuring interval of an adaptive cache
+     *  @return hits, misses, misses a cache twice as big would have hit,
+     *          and frames used, during the interval
+     */
+	public long[] sample(){
+		long[] sums = new long[4];
+		using.lock();
+		try {
+			for(int i = 0; i < segments.length; i++){
+				segments[i].sample(sums);
+			}
+			return sums;
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool readv
+    /**
+     *  Reads a run of consecutive blocks straight from disk, then lays any
+     *  cached copies over it, since a cached copy is never older than disk.
+     *  If a cached block was written to disk meanwhile, it may have left
+     *  the cache while the run holds its older copy, so the run is read
+     *  again. A run that is all cached, or being read ahead, is served
+     *  from the frames instead.
+     *  @param blockId first block of the run
+     *  @param buffer whole number of blocks
+     *  @return false if invalid or rejected by the disk
+     */
+	public boolean readv(int blockId, byte[] buffer){
+		if(blockId < 0){ return false; }
+		using.lock();
+		try {
+			int count = buffer.length / blockSize;
+			int cached = 0;
+			while(cached < count && segmentOf(blockId + cached).isCached(blockId + cached)){
+				cached++;
+			}
+			if(cached == count){
+				for(int offset = 0; offset < count; offset++){
+					segmentOf(blockId + offset).access(blockId + offset, 0, buffer,
+													   offset * blockSize, blockSize, false);
+				}
+				return true;
+			}
+			while(true){
+				long before = writebacks.get();
+				if(SysLib.rawreadv(blockId, buffer) != Kernel.OK){ return false; }
+				boolean fresh = true;
+				for(int offset = 0; offset < count; offset++){
+					fresh &= segmentOf(blockId + offset).overlay(blockId + offset,
+																buffer, offset * blockSize);
+				}
+				if(fresh && writebacks.get() == before){ return true; }
+			}
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool writev
+    /**
+     *  Writes a run of consecutive blocks straight to disk and refreshes any
+     *  cached copies, which are then clean. The blocks stay busy, in
+     *  ascending order, until the run is on disk.
+     *  @param blockId first block of the run
+     *  @param buffer whole number of blocks
+     *  @return false if invalid or rejected by the disk
+     */
+	public boolean writev(int blockId, byte[] buffer){
+		if(blockId < 0){ return false; }
+		using.lock();
+		try {
+			int count = buffer.length / blockSize;
+			for(int offset = 0; offset < count; offset++){
+				segmentOf(blockId + offset).beginWrite(blockId + offset,
+													   buffer, offset * blockSize);
+			}
+			int status = SysLib.rawwritev(blockId, buffer);
+			for(int offset = 0; offset < count; offset++){
+				segmentOf(blockId + offset).endWrite(blockId + offset);
+			}
+			return status == Kernel.OK;
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public prefetch
+    /**
+     *  Starts reading a run of blocks into the cache and returns at once.
+     *  Blocks already cached, or that would need a dirty victim, are
+     *  skipped; the rest go to disk as runs of consecutive blocks, and the
+     *  disk thread fills their frames as each run completes. Nothing is
+     *  allocated unless a run goes to disk.
+     *  @param blockId first block of the run
+     *  @param count # blocks, at most a quarter of the cache
+     */
+	public void prefetch(int blockId, int count){
+		if(blockId < 0){ return; }
+		using.lock();
+		try {
+			count = Math.min(count, maxPrefetch);
+			Prefetch claimed = prefetches.get();
+			if(claimed.segs.length < count){	// the cache grew since
+				claimed = new Prefetch(count);
+				prefetches.set(claimed);
+			}
+			CacheSegment[] segs = claimed.segs;
+			int[] frames = claimed.frames;
+			for(int i = 0; i < count; i++){
+				segs[i] = segmentOf(blockId + i);
+				frames[i] = segs[i].claimAhead(blockId + i);
+			}
+			for(int first = 0, last; first < count; first = last + 1){
+				last = first;
+				if(frames[first] < 0){ continue; }
+				while(last + 1 < count && frames[last + 1] >= 0){
+					last++;
+				}
+				ReadAhead run = new ReadAhead(blockId + first, last - first + 1,
+											  segs, frames, first);
+				if(SysLib.rawsubmit(run) != Kernel.OK){
+					for(int i = first; i <= last; i++){
+						segs[i].abandon(frames[i]);
+					}
+				}
+			}
+			Arrays.fill(segs, 0, count, null);	// let retired segments go
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private Prefetch
+    /**
+     *  The segment and frame claimed for each block of a prefetch, kept per
+     *  thread so a prefetch of blocks already cached allocates nothing
+     */
+	private static class Prefetch {
+		CacheSegment[] segs;
+		int[] frames;
+
+		Prefetch(int count){
+			segs = new CacheSegment[count];
+			frames = new int[count];
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private ReadAhead
+    /**
+     *  One prefetched run; the disk thread hands each block to its frame
+     *  when the read completes
+     */
+	private class ReadAhead extends DiskRequest {
+		private CacheSegment[] segs;
+		private int[] frames;
+
+		// copies the run's entries, from first on, out of the caller's scratch
+		ReadAhead(int blockId, int count, CacheSegment[] segs, int[] frames,
+				  int first){
+			super(DiskRequest.READ, blockId, count, new byte[count * Disk.blockSize]);
+			this.segs = Arrays.copyOfRange(segs, first, first + count);
+			this.frames = Arrays.copyOfRange(frames, first, first + count);
+		}
+
+		void complete(){
+			for(int i = 0; i < count; i++){
+				segs[i].loaded(frames[i], buffer, i * Disk.blockSize);
+			}
+			super.complete();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public sync
+    /**
+     *  Maintains clean block copies.
+     *  Writes back dirty blocks, then has the disk persist its image. Kernel
+     *  SYNC calls this after the file system has written its own state.
+     */
+	public void sync(){
+		using.lock();
+		try {
+			writeBack(Long.MAX_VALUE);
+			for(int i = 0; i < segments.length; i++){
+				segments[i].awaitWrites();
+			}
+			diskSync();
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    // flush
+    /**
+     *  Invalidating all cached blocks
      */
-	private void fromCache(int target, int blockId, byte[] buffer){
-		System.arraycopy(myCache[target].dataBlock, 0, buffer, 0, blockSize);
-		updateCache(target, blockId, true);	
+	public void flush(){
+		using.lock();
+		try {
+			writeBack(Long.MAX_VALUE);
+			for(int i = 0; i < segments.length; i++){
+				segments[i].awaitWrites();
+			}
+			for(int i = 0; i < segments.length; i++){
+				segments[i].invalidate();
+			}
+			diskSync();
+		} finally {
+			using.unlock();
+		}
 	}
 
     // -------------------------------------------------------------------------
-    //! updateCache 
+    // diskSync
     /**
-     *  Marks a cacheBlock as referenced so it isn't removed by ESCA
-     *  @param target
-     *  @param frame
-     *  @param boolVal
+     *  Has the disk write its image to the real file
      */
-	private void updateCache(int target, int frame, boolean boolVal){
-		myCache[target].blockFrame = frame;				
-		myCache[target].referenceBit = boolVal;			
+	private void diskSync(){
+		DiskRequest request = new DiskRequest(DiskRequest.SYNC, 0, 0, null);
+		if(SysLib.rawsubmit(request) == Kernel.OK){ SysLib.rawwait(request); }
 	}
 
     // -------------------------------------------------------------------------
-    //! toDisk 
+    // writeBack
     /**
-     *  Writes data to disk before removed by cache
-     *  @param target 
+     *  Writes every block dirty since dirtiedBefore or earlier to disk at
+     *  once, in block order with consecutive blocks merged into one run,
+     *  and then waits for them all
+     *  @param dirtiedBefore ms; Long.MAX_VALUE writes every dirty block
      */
-	private void toDisk(int target){
-        // Check for dirtyBit && !EMPTY
-		if(myCache[target].dirtyBit && myCache[target].blockFrame != EMPTY){
-			SysLib.rawwrite(myCache[target].blockFrame, myCache[target].dataBlock);
-			myCache[target].dirtyBit = false;			
+	public void writeBack(long dirtiedBefore){
+		using.lock();
+		try {
+			synchronized(writeBackLock){
+				Vector<DiskRequest> blocks = new Vector<DiskRequest>();
+				for(int i = 0; i < segments.length; i++){
+					segments[i].fillPartial(dirtiedBefore);
+					segments[i].collectDirty(dirtiedBefore, blocks);
+				}
+				Collections.sort(blocks, new Comparator<DiskRequest>(){
+						public int compare(DiskRequest a, DiskRequest b){
+							return Integer.compare(a.blockId, b.blockId);
+						}
+					});
+
+				Vector<DiskRequest> pending = new Vector<DiskRequest>();
+				for(int first = 0, last; first < blocks.size(); first = last + 1){
+					last = first;
+					while(last + 1 < blocks.size() && last + 1 - first < maxRun
+						  && blocks.get(last + 1).blockId == blocks.get(last).blockId + 1){
+						last++;
+					}
+					DiskRequest run = blocks.get(first);
+					if(last > first){
+						byte[] buffer = new byte[(last - first + 1) * blockSize];
+						for(int i = first; i <= last; i++){
+							System.arraycopy(blocks.get(i).buffer, 0, buffer,
+											 (i - first) * blockSize, blockSize);
+						}
+						run = new DiskRequest(DiskRequest.WRITE, run.blockId,
+											  last - first + 1, buffer);
+					}
+					if(SysLib.rawsubmit(run) == Kernel.OK){ pending.add(run); }
+				}
+				for(int i = 0; i < pending.size(); i++){
+					SysLib.rawwait(pending.get(i));
+				}
+				for(int i = 0; i < blocks.size(); i++){
+					segmentOf(blocks.get(i).blockId).endWriteBack(blocks.get(i).blockId);
+				}
+			}
+		} finally {
+			using.unlock();
 		}
 	}
 
     // -------------------------------------------------------------------------
-    //! private int nextVictim 
+    //! public int hottest
+    /**
+     *  Lists the cached blocks hit most often since they were brought in,
+     *  for the file system to read back in after a reboot
+     *  @param blocks receives the block numbers, hottest first
+     *  @return # blocks listed
+     */
+	public int hottest(int[] blocks){
+		using.lock();
+		try {
+			PriorityQueue<Long> hot = new PriorityQueue<Long>();
+			for(int i = 0; i < segments.length; i++){
+				segments[i].collectHot(hot, blocks.length);
+			}
+			int count = hot.size();
+			for(int i = count - 1; i >= 0; i--){
+				blocks[i] = (int)(long)hot.poll();
+			}
+			return count;
+		} finally {
+			using.unlock();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! setFlusher
+    /**
+     *  From now on flusher is woken when too many frames are dirty
+     *  @param flusher
+     */
+	public void setFlusher(CacheFlusher flusher){
+		this.flusher = flusher;
+	}
+
+    // Called by the segments
+	void frameDirtied(){
+		int dirty = dirtyFrames.incrementAndGet();
+		CacheFlusher f = flusher;
+		if(f != null && dirty > f.dirtyLimit()){ f.wakeUp(); }
+	}
+
+	void frameCleaned(){
+		dirtyFrames.decrementAndGet();
+	}
+
+	void blockWritten(){
+		writebacks.incrementAndGet();
+	}
+
+    // -------------------------------------------------------------------------
+    //! private segmentOf
     /**
-     *? Second Chance Algorithm 
-     *  Loops through cache until finds qualified victim ID
-     *  Qualified: hasn't been recently used
-     *  Sets referencedBit to false, giving block second chance
-     *  @return new victim
+     *  Spreads neighbouring blocks over different segments. Takes the top
+     *  bits of the hash, as BlockIndex inside the segment uses the low ones
+     *  @param blockId
+     *  @return segment that holds blockId when cached
      */
-	private int nextVictim(){
-		while(true){									
-			victim = ((++victim) % pageSize);			
-			if(!myCache[victim].referenceBit){ return victim; } 
-			myCache[victim].referenceBit = false; 	
+	private CacheSegment segmentOf(int blockId){
+		return segments[segmentIndex(blockId, segmentShift)];
+	}
+
+	private static int segmentIndex(int blockId, int shift){
+		long h = (blockId * 0x9E3779B9L) & 0xFFFFFFFFL;
+		return (int)(h >>> shift);
+	}
+
+    // -------------------------------------------------------------------------
+    //! public report
+    /**
+     *  Appends hit, miss and eviction counts under the policy's name,
+     *  counted since boot across resizes
+     *  @param out
+     */
+	public void report(StringBuffer out){
+		using.lock();
+		try {
+			long[] sums = retired.clone();
+			for(int i = 0; i < segments.length; i++){
+				addStats(segments[i], sums);
+			}
+			long hits = sums[0], misses = sums[1];
+			long lookups = hits + misses;
+			out.append("cache (" + policyName + ", " + pageSize + " " + store.name()
+					   + " frames in " + segments.length + " segments, "
+					   + resizes + " resizes): "
+					   + hits + " hits, " + misses + " misses ("
+					   + (lookups == 0 ? 0 : hits * 100 / lookups) + "% hit), "
+					   + sums[2] + " evictions (" + sums[3] + " dirty), "
+					   + dirtyFrames.get() + " frames dirty, "
+					   + sums[4] + " read ahead (" + sums[5] + " used)\n");
+		} finally {
+			using.unlock();
+		}
+	}
+
+	// keeps the counts of a segment being replaced by resize
+	private void retire(CacheSegment segment){
+		addStats(segment, retired);
+	}
+
+	private static void addStats(CacheSegment segment, long[] sums){
+		synchronized(segment){
+			sums[0] += segment.hits;
+			sums[1] += segment.misses;
+			sums[2] += segment.evictions;
+			sums[3] += segment.dirtyEvictions;
+			sums[4] += segment.readAhead;
+			sums[5] += segment.readAheadUsed;
 		}
-	}	
+	}
 }
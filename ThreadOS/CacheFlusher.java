@@ -0,0 +1,67 @@
+// ------------------------------ CacheFlusher.java ----------------------------
+/**
+ * PURPOSE OF FILE
+ * Kernel thread that writes dirty cache blocks back before they are
+ * evicted. Every pass writes the blocks that have been dirty for longer
+ * than maxAge; when more than dirtyRatio percent of the frames are dirty
+ * the cache wakes it early and it writes them all. Either way the blocks
+ * go out in block order, consecutive ones as a single run.
+ * Tuned at boot with "-dirty percent" and "-dirtyage ms". The limit
+ * follows the cache's size when it is resized.
+ */
+
+public class CacheFlusher extends Thread {
+	private Cache cache;
+	private int dirtyRatio;							// % dirty frames tolerated
+	private long maxAge;							// ms a block may stay dirty
+	private boolean pressed;						// over dirtyLimit
+
+    // -------------------------------------------------------------------------
+    //! public Constructor
+    /**
+     * @param cache to write back
+     * @param dirtyRatio percent of frames that may be dirty
+     * @param maxAge ms a block may stay dirty
+     */
+	public CacheFlusher(Cache cache, int dirtyRatio, long maxAge){
+		this.cache = cache;
+		this.dirtyRatio = dirtyRatio;
+		this.maxAge = Math.max(1, maxAge);
+		pressed = false;
+		cache.setFlusher(this);
+	}
+
+	// # dirty frames tolerated
+	public int dirtyLimit(){
+		return cache.size() * dirtyRatio / 100;
+	}
+
+    // -------------------------------------------------------------------------
+    //! wakeUp
+    /**
+     *  Called by the cache when more than dirtyLimit frames are dirty
+     */
+	public synchronized void wakeUp(){
+		pressed = true;
+		notify();
+	}
+
+	public void run(){
+		while(true){
+			boolean all;
+			synchronized(this){
+				if(!pressed){
+					try {
+						wait(Math.max(10, maxAge / 2));
+					} catch (InterruptedException e) {
+						SysLib.cerr(e.toString() + "\n");
+					}
+				}
+				all = pressed;
+				pressed = false;
+			}
+			cache.writeBack(all ? Long.MAX_VALUE
+							: System.currentTimeMillis() - maxAge);
+		}
+	}
+}
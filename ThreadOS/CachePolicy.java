@@ -0,0 +1,53 @@
+/** ========================================== CachePolicy.java ==============================================
+ * SUMMARY
+ * Replacement policy of the buffer cache. The cache tells the policy what
+ * happens to each frame and asks it which frame to give up when every
+ * frame is in use. Chosen at boot with "-policy esca|lru|2q|arc|clockpro"
+ * (esca by default).
+ */
+
+public interface CachePolicy {
+    int NONE = SlotList.NONE;
+
+    // which occupied frames the cache can give up right now: a pinned frame
+    // never is, and read-ahead takes only clean ones
+    interface Frames {
+        boolean evictable( int frame );
+    }
+
+    // name shown in the cache statistics
+    String name( );
+
+    // a miss on blockId needs a frame and none is empty: returns an
+    // occupied frame that candidates lets go of, which the policy then stops
+    // tracking until inserted( ) hands it back, or NONE, having changed
+    // nothing, if no tracked frame may go
+    int victim( int blockId, Frames candidates );
+
+    // frame now holds blockId, read in or written after a miss
+    void inserted( int frame, int blockId );
+
+    // a hit on frame
+    void referenced( int frame );
+
+    // frame's data now differs from disk, or has just been written back
+    void dirtied( int frame );
+    void cleaned( int frame );
+
+    // frame was emptied without being evicted, e.g. by a flush
+    void removed( int frame );
+
+    // returns the policy named at boot for a cache of frames frames, or
+    // ESCA for unknown names
+    static CachePolicy forName( String name, int frames ) {
+        if ( name.equals( "lru" ) )
+            return new LruPolicy( frames );
+        if ( name.equals( "2q" ) )
+            return new TwoQueuePolicy( frames );
+        if ( name.equals( "arc" ) )
+            return new ArcPolicy( frames );
+        if ( name.equals( "clockpro" ) )
+            return new ClockProPolicy( frames );
+        return new EscaPolicy( frames );
+    }
+}
@@ -0,0 +1,747 @@
+// ------------------------------ CacheSegment.java ----------------------------
+/**
+ * PURPOSE OF FILE
+ * One stripe of the buffer cache. Cache hashes every block number to one
+ * segment, and each segment has its own frames, index, replacement policy
+ * and lock, so threads working on blocks of different segments never wait
+ * on each other.
+ *
+ * Disk I/O happens outside the lock. A frame being filled is LOADING and
+ * threads wanting its block wait for it. A block whose newest data is
+ * being written to disk is "busy": it cannot be loaded or modified until
+ * that write lands, so a reader never sees the older copy still on disk.
+ *
+ * Read-ahead claims frames the same way, but the disk thread fills them
+ * when the asynchronous read completes.
+ *
+ * The data of the frames lives in a FrameStore shared by all segments;
+ * this segment owns frames base .. base + frames - 1 of it.
+ *
+ * A pinned frame is lent out as a view of its data and is not evicted,
+ * emptied or replaced until every pin is released. A frame pinned for
+ * writing is not written back while pinned; releasing it leaves it dirty.
+ *
+ * A segment of an adaptive cache also remembers the blocks it evicted
+ * and which frames were used in the current interval, so CacheSizer can
+ * tell what a bigger or smaller cache would hit.
+ *
+ * A write of part of a block that is not cached fills only those bytes of
+ * a frame. Its other bytes are read from disk (the frame is FILLING
+ * meanwhile) only when a read, a pin or a write back needs them.
+ */
+
+import java.util.PriorityQueue;
+import java.util.Vector;
+
+public class CacheSegment {
+
+    // Frame states
+	private final static byte EMPTY = 0;
+	private final static byte LOADING = 1;
+	private final static byte VALID = 2;
+	private final static byte FILLING = 3;			// partial, reading the rest
+	private final static int EMPTY_BLOCK = -1;		// blockOf an EMPTY frame
+
+	private int frames;								// # frames in segment
+	private int blockSize;
+	private FrameStore store;						// block held by frame
+	private int base;								// store frame of frame 0
+	private int[] blockOf;							// blockId of frame
+	private byte[] state;
+	private int[] validFrom;						// bytes of the block held:
+	private int[] validTo;							// all but partial writes
+	private boolean[] dirty;
+	private long[] dirtiedAt;						// ms, when it became dirty
+	private boolean[] ahead;						// read ahead, not yet used
+	private int[] refs;								// hits since filled
+	private int[] pins;								// # views lent out
+	private int[] writers;							// # of them writable
+	private int pinnedFrames;						// # frames with pins
+	private CachePolicy.Frames unpinned;			// frames a miss may take
+	private CachePolicy.Frames clean;				// ones read-ahead may take
+	private GhostList ghosts;						// evicted, adaptive only
+	private int[] seen;								// interval frame last used
+	private int epoch;								// current interval
+	private int touched;							// frames used in interval
+	private long ghostHits;							// misses on ghosts
+	private long sampledHits;						// hits at last sample
+	private long sampledMisses;
+
+	private BlockIndex index;						// blockId -> frame
+	private BlockIndex busy;						// blocks being written
+	private int[] freeFrames;						// stack of EMPTY frames
+	private int freeCount;
+	private int loadingCount;						// # LOADING frames
+	private CachePolicy policy;
+	private Cache cache;							// counts dirty frames and
+													// blocks written, all segments
+    // Statistics
+	long hits, misses, evictions, dirtyEvictions;
+	long readAhead, readAheadUsed;
+
+    // -------------------------------------------------------------------------
+    //! public Constructor
+    /**
+     * @param blockSize of each frame
+     * @param frames # frames in this segment
+     * @param policy replacement policy for these frames
+     * @param cache the cache this segment belongs to
+     * @param store holds the data of the frames
+     * @param base first frame of store owned by this segment
+     * @param adaptive measure for CacheSizer
+     */
+	public CacheSegment(int blockSize, int frames, CachePolicy policy,
+						Cache cache, FrameStore store, int base,
+						boolean adaptive){
+		this.frames = frames;
+		this.blockSize = blockSize;
+		this.policy = policy;
+		this.cache = cache;
+		this.store = store;
+		this.base = base;
+		blockOf = new int[frames];
+		state = new byte[frames];
+		validFrom = new int[frames];
+		validTo = new int[frames];
+		dirty = new boolean[frames];
+		dirtiedAt = new long[frames];
+		ahead = new boolean[frames];
+		refs = new int[frames];
+		pins = new int[frames];
+		writers = new int[frames];
+		unpinned = frame -> pins[frame] == 0;
+		clean = frame -> pins[frame] == 0 && !dirty[frame];
+		if(adaptive){
+			ghosts = new GhostList(frames, 1);
+			seen = new int[frames];
+			epoch = 1;
+		}
+		index = new BlockIndex(frames);
+		busy = new BlockIndex(frames);
+		freeFrames = new int[frames];
+		for(int i = 0; i < frames; i++){
+			freeFrames[i] = frames - 1 - i;
+		}
+		freeCount = frames;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public int access
+    /**
+     *  Reads bytes from .. from + length - 1 of blockId into buffer[], or
+     *  with write overwrites them from buffer[]. A miss takes a frame, then
+     *  writes back its old block and reads the new one without holding the
+     *  lock. A write of part of a block that is not cached is not read in:
+     *  the frame holds just the bytes written until something needs the
+     *  rest, which is then read from disk around them.
+     *  With no buffer[] the whole frame is pinned instead, and read in even
+     *  for a write, since the caller will change only part of it.
+     *  @param blockId
+     *  @param from first byte of the block
+     *  @param buffer null to pin
+     *  @param offset of byte from in buffer[]
+     *  @param length # bytes
+     *  @param write
+     *  @return frame
+     */
+	public int access(int blockId, int from, byte[] buffer, int offset, int length,
+					  boolean write){
+		while(true){
+			int frame;
+			int evicted;
+			int evictedFrom, evictedTo;				// bytes of it held
+			boolean filling = false;
+			synchronized(this){
+				while(true){
+					frame = index.get(blockId);
+					if(frame != BlockIndex.MISSING){
+						if(state[frame] != VALID || (write && isBusy(blockId))){
+							waitHere();
+							continue;
+						}
+						if(!holds(frame, from, length, buffer != null, write)){
+							startFill(frame);
+							filling = true;
+							break;
+						}
+						hits++;
+						refs[frame]++;
+						touch(frame);
+						if(ahead[frame]){
+							ahead[frame] = false;
+							readAheadUsed++;
+						}
+						policy.referenced(frame);
+						use(frame, from, buffer, offset, length, write);
+						return frame;
+					}
+				//  Wait for a write of this block, or for any frame to settle
+					if(isBusy(blockId) || !canClaim()){
+						waitHere();
+						continue;
+					}
+					break;
+				}
+				if(!filling){
+					misses++;
+					if(ghosts != null && ghosts.listOf(blockId) != SlotList.NONE){
+						ghostHits++;
+						ghosts.remove(blockId);
+					}
+					frame = claim(blockId);
+					evicted = blockOf[frame];
+					evictedFrom = validFrom[frame];
+					evictedTo = validTo[frame];
+					blockOf[frame] = blockId;
+					if(evicted != EMPTY_BLOCK && !markEvicted(evicted)){ evicted = EMPTY_BLOCK; }
+				} else {
+					evicted = EMPTY_BLOCK;
+					evictedFrom = evictedTo = 0;
+				}
+			}
+			if(filling){
+				fill(frame, blockId);
+				continue;
+			}
+		//  The frame is LOADING: no other thread touches it
+			if(evicted != EMPTY_BLOCK){ writeOut(frame, evicted, evictedFrom, evictedTo); }
+			boolean read = !write || buffer == null;
+			if(read){ store.read(base + frame, blockId); }
+			synchronized(this){
+				if(evicted != EMPTY_BLOCK){
+					busy.remove(evicted);
+					cache.blockWritten();
+				}
+				state[frame] = VALID;
+				validFrom[frame] = read ? 0 : from;
+				validTo[frame] = read ? blockSize : from + length;
+				loadingCount--;
+				policy.inserted(frame, blockId);
+				touch(frame);
+				use(frame, from, buffer, offset, length, write);
+				notifyAll();
+			}
+			return frame;
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public fillPartial
+    /**
+     *  Reads in the rest of every partly written block dirty since
+     *  dirtiedBefore or earlier, so it can be written back whole
+     *  @param dirtiedBefore ms
+     */
+	public void fillPartial(long dirtiedBefore){
+		while(true){
+			int frame = -1;
+			synchronized(this){
+				for(int i = 0; i < frames && frame < 0; i++){
+					if(state[i] == VALID && !isFull(i) && dirtiedAt[i] <= dirtiedBefore
+					   && writers[i] == 0){
+						frame = i;
+					}
+				}
+				if(frame < 0){ return; }
+				startFill(frame);
+			}
+			fill(frame, blockOf[frame]);
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public view
+    /**
+     *  @param frame pinned by access
+     *  @param write
+     *  @return view of the frame's data, read-only unless write
+     */
+	public java.nio.ByteBuffer view(int frame, boolean write){
+		return store.view(base + frame, write);
+	}
+
+    // -------------------------------------------------------------------------
+    //! public unpin
+    /**
+     *  Releases one pin of the frame holding blockId; releasing a writable
+     *  view leaves the block dirty
+     *  @param blockId
+     *  @param write the view was writable
+     *  @return false if blockId is not pinned
+     */
+	public synchronized boolean unpin(int blockId, boolean write){
+		int frame = index.get(blockId);
+		if(frame == BlockIndex.MISSING || pins[frame] == 0
+		   || (write && writers[frame] == 0)){
+			return false;
+		}
+		if(write){
+			writers[frame]--;
+			setDirty(frame, true);
+		}
+		if(--pins[frame] == 0){ pinnedFrames--; }
+		if(pins[frame] == 0 || (write && writers[frame] == 0)){ notifyAll(); }
+		return true;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public int claimAhead
+    /**
+     *  Takes a frame to read blockId ahead into, and marks it LOADING. Read-
+     *  ahead never waits: it gives up if the block is already here or busy,
+     *  if every frame is loading, or if no clean, unpinned frame can go.
+     *  @param blockId
+     *  @return frame, or -1
+     */
+	public synchronized int claimAhead(int blockId){
+		if(index.get(blockId) != BlockIndex.MISSING || isBusy(blockId)
+		   || !canClaim()){
+			return -1;
+		}
+		int frame;
+		if(freeCount > 0){
+			frame = freeFrames[--freeCount];
+		} else {
+			frame = policy.victim(blockId, clean);
+			if(frame == CachePolicy.NONE){ return -1; }
+			evictions++;
+			forget(blockOf[frame]);
+		}
+		state[frame] = LOADING;
+		loadingCount++;
+		refs[frame] = 0;
+		blockOf[frame] = blockId;
+		index.put(blockId, frame);
+		return frame;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public loaded
+    /**
+     *  The read ahead into frame has completed
+     *  @param frame
+     *  @param buffer holding the block
+     *  @param offset of the block in buffer[]
+     */
+	public synchronized void loaded(int frame, byte[] buffer, int offset){
+		store.put(base + frame, buffer, offset);
+		state[frame] = VALID;
+		validFrom[frame] = 0;
+		validTo[frame] = blockSize;
+		loadingCount--;
+		ahead[frame] = true;
+		readAhead++;
+		policy.inserted(frame, blockOf[frame]);
+		notifyAll();
+	}
+
+    // -------------------------------------------------------------------------
+    //! public abandon
+    /**
+     *  The read ahead into frame was rejected by the disk
+     *  @param frame
+     */
+	public synchronized void abandon(int frame){
+		index.remove(blockOf[frame]);
+		state[frame] = EMPTY;
+		loadingCount--;
+		freeFrames[freeCount++] = frame;
+		notifyAll();
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool isCached
+    /**
+     *  @param blockId
+     *  @return true if a frame holds or is loading blockId
+     */
+	public synchronized boolean isCached(int blockId){
+		return index.get(blockId) != BlockIndex.MISSING;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public bool overlay
+    /**
+     *  Copies blockId over its place in a run just read from disk, if this
+     *  segment holds it
+     *  @param blockId
+     *  @param buffer the run
+     *  @param offset of blockId in buffer[]
+     *  @return false if a write of blockId was in flight, so the run may
+     *          hold its older copy and must be read again
+     */
+	public synchronized boolean overlay(int blockId, byte[] buffer, int offset){
+		boolean fresh = true;
+		int frame;
+		while(((frame = index.get(blockId)) == BlockIndex.MISSING
+			   || state[frame] != VALID) && isBusy(blockId)
+			  || (frame != BlockIndex.MISSING && state[frame] == FILLING)){
+			fresh = false;
+			waitHere();
+		}
+		if(frame != BlockIndex.MISSING && state[frame] == VALID){
+			store.get(base + frame, validFrom[frame], buffer, offset + validFrom[frame],
+					  validTo[frame] - validFrom[frame]);
+			policy.referenced(frame);
+		}
+		return fresh;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public beginWrite
+    /**
+     *  Marks blockId busy ahead of a run written straight to disk, and puts
+     *  the new data in its frame if cached
+     *  @param blockId
+     *  @param buffer the run
+     *  @param offset of blockId in buffer[]
+     */
+	public synchronized void beginWrite(int blockId, byte[] buffer, int offset){
+		int frame;
+		while(isBusy(blockId) || ((frame = index.get(blockId)) != BlockIndex.MISSING
+								  && (state[frame] != VALID || writers[frame] > 0))){
+			waitHere();
+		}
+		busy.put(blockId, 0);
+		frame = index.get(blockId);
+		if(frame != BlockIndex.MISSING){
+			store.put(base + frame, buffer, offset);
+			validFrom[frame] = 0;
+			validTo[frame] = blockSize;
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public endWrite
+    /**
+     *  The run holding blockId is on disk, so its cached copy is clean
+     *  @param blockId
+     */
+	public synchronized void endWrite(int blockId){
+		busy.remove(blockId);
+		cache.blockWritten();
+		int frame = index.get(blockId);
+		if(frame != BlockIndex.MISSING && state[frame] == VALID){
+			setDirty(frame, false);
+		}
+		notifyAll();
+	}
+
+    // -------------------------------------------------------------------------
+    //! public collectDirty
+    /**
+     *  Takes a copy of every block dirty since dirtiedBefore or earlier,
+     *  as a write not yet submitted, and marks the blocks clean and busy
+     *  until endWriteBack
+     *  @param dirtiedBefore ms; Long.MAX_VALUE takes every dirty block
+     *  @param out receives the writes
+     */
+	public synchronized void collectDirty(long dirtiedBefore, Vector<DiskRequest> out){
+		for(int i = 0; i < frames; i++){
+			if(state[i] == VALID && dirty[i] && dirtiedAt[i] <= dirtiedBefore
+			   && writers[i] == 0 && isFull(i) && !isBusy(blockOf[i])){
+				out.add(new DiskRequest(DiskRequest.WRITE, blockOf[i],
+										store.copy(base + i)));
+				busy.put(blockOf[i], 0);
+				setDirty(i, false);
+			}
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public endWriteBack
+    /**
+     *  A write taken by collectDirty has landed
+     *  @param blockId
+     */
+	public synchronized void endWriteBack(int blockId){
+		busy.remove(blockId);
+		cache.blockWritten();
+		notifyAll();
+	}
+
+    // -------------------------------------------------------------------------
+    //! public awaitWrites
+    /**
+     *  Waits until no write of a block of this segment is in flight
+     */
+	public synchronized void awaitWrites(){
+		while(busy.size() > 0){
+			waitHere();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public collectHot
+    /**
+     *  Offers every cached block to hot, which keeps the most referenced
+     *  ones, at most limit of them
+     *  @param hot hits in the high half, blockId in the low half
+     *  @param limit
+     */
+	public synchronized void collectHot(PriorityQueue<Long> hot, int limit){
+		for(int i = 0; i < frames; i++){
+			if(state[i] != VALID){ continue; }
+			long entry = ((long)refs[i] << 32) | blockOf[i];
+			if(hot.size() < limit){
+				hot.add(entry);
+			} else if(entry > hot.peek()){
+				hot.poll();
+				hot.add(entry);
+			}
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public adopt
+    /**
+     *  Puts a clean copy of blockId in an empty frame, as a cache being
+     *  resized hands its blocks over
+     *  @param blockId
+     *  @param buffer holding the block
+     *  @return false if no frame is empty
+     */
+	public synchronized boolean adopt(int blockId, byte[] buffer){
+		if(freeCount == 0 || index.get(blockId) != BlockIndex.MISSING){ return false; }
+		int frame = freeFrames[--freeCount];
+		store.put(base + frame, buffer, 0);
+		blockOf[frame] = blockId;
+		state[frame] = VALID;
+		validFrom[frame] = 0;
+		validTo[frame] = blockSize;
+		ahead[frame] = false;
+		refs[frame] = 0;
+		index.put(blockId, frame);
+		policy.inserted(frame, blockId);
+		return true;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public awaitIdle
+    /**
+     *  Waits until no frame is loading and no write is in flight
+     */
+	public synchronized void awaitIdle(){
+		while(loadingCount > 0 || busy.size() > 0){
+			waitHere();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! public sample
+    /**
+     *  Adds this interval's hits, misses, misses that a cache twice as big
+     *  would have hit, and frames used, to sums[0 .. 3], then starts a new
+     *  interval
+     *  @param sums
+     */
+	public synchronized void sample(long[] sums){
+		sums[0] += hits - sampledHits;
+		sums[1] += misses - sampledMisses;
+		sums[2] += ghostHits;
+		sums[3] += touched;
+		sampledHits = hits;
+		sampledMisses = misses;
+		ghostHits = 0;
+		touched = 0;
+		epoch++;
+	}
+
+    // -------------------------------------------------------------------------
+    //! public invalidate
+    /**
+     *  Empties every frame holding a clean block; dirty ones written since
+     *  the last write-back, and pinned ones, are kept
+     */
+	public synchronized void invalidate(){
+		for(int i = 0; i < frames; i++){
+			if(state[i] == VALID && !dirty[i] && pins[i] == 0 && !isBusy(blockOf[i])){
+				index.remove(blockOf[i]);
+				policy.removed(i);
+				state[i] = EMPTY;
+				freeFrames[freeCount++] = i;
+			}
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private int claim
+    /**
+     *  Takes an empty frame, or the policy's victim, for blockId and marks it
+     *  LOADING; blockOf still names the block it held, if any
+     *  @param blockId
+     *  @return frame
+     */
+	private int claim(int blockId){
+		int frame;
+		if(freeCount > 0){
+			frame = freeFrames[--freeCount];
+			blockOf[frame] = EMPTY_BLOCK;
+		} else {
+			frame = policy.victim(blockId, unpinned);
+			evictions++;
+			forget(blockOf[frame]);
+			if(!dirty[frame]){ blockOf[frame] = EMPTY_BLOCK; }
+			setDirty(frame, false);
+		}
+		state[frame] = LOADING;
+		ahead[frame] = false;
+		refs[frame] = 0;
+		loadingCount++;
+		index.put(blockId, frame);
+		return frame;
+	}
+
+	// an evicted block leaves the index; an adaptive cache remembers it
+	private void forget(int blockId){
+		index.remove(blockId);
+		if(ghosts != null){ ghosts.add(0, blockId); }
+	}
+
+	// counts frame as used in this interval
+	private void touch(int frame){
+		if(seen != null && seen[frame] != epoch){
+			seen[frame] = epoch;
+			touched++;
+		}
+	}
+
+	// a frame is empty, or some VALID frame is not pinned
+	private boolean canClaim(){
+		return freeCount > 0 || loadingCount + pinnedFrames < frames;
+	}
+
+    // -------------------------------------------------------------------------
+    //! private bool markEvicted
+    /**
+     *  Marks a dirty block just evicted busy until it is written back
+     *  @param blockId
+     *  @return false if a run being written already carries the same data
+     */
+	private boolean markEvicted(int blockId){
+		if(isBusy(blockId)){ return false; }
+		dirtyEvictions++;
+		busy.put(blockId, 0);
+		return true;
+	}
+
+	private boolean isBusy(int blockId){
+		return busy.get(blockId) != BlockIndex.MISSING;
+	}
+
+    // -------------------------------------------------------------------------
+    //! private use
+    /**
+     *  Moves bytes from .. from + length - 1 between frame and buffer[]; a
+     *  write leaves the frame dirty, holding at least those bytes. With no
+     *  buffer[] pins the frame instead.
+     */
+	private void use(int frame, int from, byte[] buffer, int offset, int length,
+					 boolean write){
+		if(buffer == null){
+			if(pins[frame]++ == 0){ pinnedFrames++; }
+			if(write){ writers[frame]++; }
+		} else if(write){
+			store.put(base + frame, from, buffer, offset, length);
+			validFrom[frame] = Math.min(validFrom[frame], from);
+			validTo[frame] = Math.max(validTo[frame], from + length);
+			setDirty(frame, true);
+		} else {
+			store.get(base + frame, from, buffer, offset, length);
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private bool holds
+    /**
+     *  @return true if frame holds what an access needs: the whole block,
+     *          the bytes read, or bytes next to or overlapping the ones
+     *          written, so the frame still holds one run of bytes
+     */
+	private boolean holds(int frame, int from, int length, boolean copying,
+						  boolean write){
+		if(isFull(frame)){ return true; }
+		if(!copying){ return false; }
+		if(write){ return from <= validTo[frame] && from + length >= validFrom[frame]; }
+		return from >= validFrom[frame] && from + length <= validTo[frame];
+	}
+
+	private boolean isFull(int frame){
+		return validFrom[frame] == 0 && validTo[frame] == blockSize;
+	}
+
+    // -------------------------------------------------------------------------
+    //! private startFill
+    /**
+     *  Marks a partly written frame FILLING, and pins it so it stays put,
+     *  while the rest of its block is read
+     */
+	private void startFill(int frame){
+		state[frame] = FILLING;
+		if(pins[frame]++ == 0){ pinnedFrames++; }
+	}
+
+    // -------------------------------------------------------------------------
+    //! private fill
+    /**
+     *  Reads blockId from disk, without holding the lock, around the bytes
+     *  its FILLING frame holds, then makes the frame whole and VALID
+     */
+	private void fill(int frame, int blockId){
+		byte[] block = new byte[blockSize];
+		SysLib.rawread(blockId, block);
+		synchronized(this){
+			store.put(base + frame, 0, block, 0, validFrom[frame]);
+			store.put(base + frame, validTo[frame], block, validTo[frame],
+					  blockSize - validTo[frame]);
+			validFrom[frame] = 0;
+			validTo[frame] = blockSize;
+			state[frame] = VALID;
+			if(--pins[frame] == 0){ pinnedFrames--; }
+			notifyAll();
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private writeOut
+    /**
+     *  Writes an evicted block back from its LOADING frame, which held
+     *  bytes from .. to - 1 of it; a partly written block is first read
+     *  around them
+     */
+	private void writeOut(int frame, int blockId, int from, int to){
+		if(from == 0 && to == blockSize){
+			store.write(base + frame, blockId);
+			return;
+		}
+		byte[] block = new byte[blockSize];
+		SysLib.rawread(blockId, block);
+		store.get(base + frame, from, block, from, to - from);
+		SysLib.rawwrite(blockId, block);
+	}
+
+    // -------------------------------------------------------------------------
+    //! private setDirty
+    /**
+     *  Sets a frame's dirty bit, telling the policy and the cache's count
+     *  of dirty frames; a frame turning dirty starts aging
+     */
+	private void setDirty(int frame, boolean value){
+		if(value && !dirty[frame]){
+			dirtiedAt[frame] = System.currentTimeMillis();
+			cache.frameDirtied();
+		} else if(!value && dirty[frame]){
+			cache.frameCleaned();
+		}
+		dirty[frame] = value;
+		if(value){ policy.dirtied(frame); } else { policy.cleaned(frame); }
+	}
+
+	private void waitHere(){
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			SysLib.cerr(e.toString() + "\n");
+		}
+	}
+}
@@ -0,0 +1,83 @@
+// ------------------------------ CacheSizer.java ------------------------------
+/**
+ * PURPOSE OF FILE
+ * Kernel thread that sizes an adaptive cache to its load, between a
+ * minimum and a memory budget given at boot with "-cachebudget MB".
+ *
+ * Each interval the segments report two points of the hit-ratio curve:
+ * misses on recently evicted blocks, which a cache twice as big would
+ * have hit, and the number of frames actually used, below which hits
+ * start to fall. Enough of the former, as a share of all misses, doubles
+ * the cache; a working set well under the cache for several intervals in
+ * a row shrinks it to the working set plus a quarter, at most halving it
+ * at once.
+ */
+
+public class CacheSizer extends Thread {
+	private Cache cache;
+	private int minFrames;
+	private int maxFrames;							// the memory budget
+	private int oversized;							// intervals in a row
+
+	private final long INTERVAL = 1000;				// ms between samples
+	private final long MIN_LOOKUPS = 100;			// fewer tell nothing
+	private final int GROW_PERCENT = 2;				// misses hitting ghosts
+	private final int SHRINK_AFTER = 3;				// oversized intervals
+
+    // -------------------------------------------------------------------------
+    //! public Constructor
+    /**
+     * @param cache an adaptive cache
+     * @param minFrames smallest size
+     * @param maxFrames largest size the memory budget allows
+     */
+	public CacheSizer(Cache cache, int minFrames, int maxFrames){
+		this.cache = cache;
+		this.minFrames = minFrames;
+		this.maxFrames = Math.max(minFrames, maxFrames);
+		oversized = 0;
+	}
+
+	public void run(){
+		while(true){
+			try {
+				sleep(INTERVAL);
+			} catch (InterruptedException e) {
+				SysLib.cerr(e.toString() + "\n");
+			}
+			int frames = cache.size();
+			int target = target(cache.sample(), frames);
+			if(target != frames){ cache.resize(target); }
+		}
+	}
+
+    // -------------------------------------------------------------------------
+    //! private int target
+    /**
+     *  @param sample hits, misses, ghost hits and frames used in the
+     *         interval
+     *  @param frames current size
+     *  @return size for the next interval
+     */
+	private int target(long[] sample, int frames){
+		long misses = sample[1];
+		long ghostHits = sample[2];
+		long used = sample[3];
+		if(sample[0] + misses < MIN_LOOKUPS){
+			oversized = 0;
+			return frames;
+		}
+		if(ghostHits > 0 && ghostHits * 100 >= misses * GROW_PERCENT){
+			oversized = 0;
+			return (int)Math.min(maxFrames, (long)frames * 2);
+		}
+		int wanted = (int)Math.max(minFrames, used + used / 4);
+		if(wanted >= frames * 3 / 4){
+			oversized = 0;
+			return frames;
+		}
+		if(++oversized < SHRINK_AFTER){ return frames; }
+		oversized = 0;
+		return Math.max(wanted, frames / 2);
+	}
+}
@@ -0,0 +1,241 @@
+/** ========================================== ClockProPolicy.java ==============================================
+ * SUMMARY
+ * CLOCK-Pro (Jiang, Chen and Zhang). Resident blocks are hot or cold, and
+ * a new block starts cold in a test period; the numbers of cold blocks
+ * evicted during their test period stay on the clock as non-resident
+ * entries. A block hit again while in its test period turns hot. Three
+ * hands sweep one circular list: the cold hand finds victims, the hot hand
+ * turns unreferenced hot blocks cold, and the test hand ends test periods
+ * so no more than one clock's worth of non-resident entries is kept. The
+ * share of frames given to cold blocks grows when a non-resident block
+ * comes back and shrinks when a test period runs out.
+ *
+ * Slots 0 .. frames-1 are the frames; slots frames .. 2*frames-1 hold
+ * non-resident entries.
+ */
+
+public class ClockProPolicy implements CachePolicy {
+    private final static int NONE = SlotList.NONE;
+
+    private int frames;
+    private SlotList clock;        // one list, read circularly
+    private boolean hot[], test[], reference[];
+    private int blockOf[];         // block of each slot
+    private BlockIndex nonResident;  // blockId -> non-resident slot
+    private int freeSlots[];       // unused non-resident slots
+    private int freeCount;
+
+    private int handHot, handCold, handTest;
+    private int hotCount, coldCount, testCount;
+    private int coldTarget;        // m_c, frames kept for cold blocks
+
+    public ClockProPolicy( int frames ) {
+        this.frames = frames;
+        clock = new SlotList( 2 * frames, 1 );
+        hot = new boolean[2 * frames];
+        test = new boolean[2 * frames];
+        reference = new boolean[frames];
+        blockOf = new int[2 * frames];
+        nonResident = new BlockIndex( frames );
+        freeSlots = new int[frames];
+        for ( int i = 0; i < frames; i++ )
+            freeSlots[i] = 2 * frames - 1 - i;
+        freeCount = frames;
+        handHot = handCold = handTest = NONE;
+        coldTarget = Math.max( 1, frames / 2 );
+    }
+
+    public String name( ) {
+        return "clockpro";
+    }
+
+    public int victim( int blockId, Frames candidates ) {
+        if ( !anyEvictable( candidates ) )
+            return NONE;
+        int passed = 0;   // cold slots the hand has had to leave
+        while ( true ) {
+            // frames still loading are off the clock, so every tracked one
+            // may be hot; so may every one that may go
+            if ( coldCount == 0 || passed > coldCount ) {
+                if ( hotCount > 0 )
+                    runHandHot( );
+                passed = 0;
+            }
+            int slot = handCold;
+            handCold = step( slot );
+            if ( slot >= frames || hot[slot] )
+                continue;
+            if ( !candidates.evictable( slot ) ) {
+                passed++;
+                continue;
+            }
+            if ( reference[slot] ) {
+                reference[slot] = false;
+                if ( test[slot] ) {
+                    // hit during its test period: promote
+                    test[slot] = false;
+                    hot[slot] = true;
+                    coldCount--;
+                    hotCount++;
+                    toHead( slot );
+                    while ( hotCount > frames - coldTarget )
+                        runHandHot( );
+                } else {
+                    test[slot] = true;
+                    toHead( slot );
+                }
+                continue;
+            }
+            // cold and unreferenced: evict, remembering it if in test
+            if ( test[slot] ) {
+                while ( testCount >= frames )
+                    runHandTest( );
+                int entry = freeSlots[--freeCount];
+                clock.addBefore( slot, entry );
+                hot[entry] = false;
+                test[entry] = true;
+                blockOf[entry] = blockOf[slot];
+                nonResident.put( blockOf[slot], entry );
+                testCount++;
+            }
+            coldCount--;
+            unlink( slot );
+            return slot;
+        }
+    }
+
+    // some frame on the clock may go
+    private boolean anyEvictable( Frames candidates ) {
+        for ( int frame = 0; frame < frames; frame++ ) {
+            if ( clock.listOf( frame ) != NONE
+                 && candidates.evictable( frame ) )
+                return true;
+        }
+        return false;
+    }
+
+    public void inserted( int frame, int blockId ) {
+        blockOf[frame] = blockId;
+        reference[frame] = false;
+        int entry = nonResident.get( blockId );
+        if ( entry != BlockIndex.MISSING ) {
+            // back while still in its test period: cold blocks need room
+            coldTarget = Math.max( 1, Math.min( frames - 1, coldTarget + 1 ) );
+            removeNonResident( entry );
+            hot[frame] = true;
+            test[frame] = false;
+            hotCount++;
+            toHead( frame );
+            while ( hotCount > frames - coldTarget )
+                runHandHot( );
+        } else {
+            hot[frame] = false;
+            test[frame] = true;
+            coldCount++;
+            toHead( frame );
+        }
+    }
+
+    public void referenced( int frame ) {
+        reference[frame] = true;
+    }
+
+    public void dirtied( int frame ) { }
+
+    public void cleaned( int frame ) { }
+
+    public void removed( int frame ) {
+        if ( clock.listOf( frame ) == NONE )
+            return;
+        if ( hot[frame] )
+            hotCount--;
+        else
+            coldCount--;
+        unlink( frame );
+        hot[frame] = test[frame] = reference[frame] = false;
+    }
+
+    // turns the first unreferenced hot block cold, ending test periods
+    // on the way
+    private void runHandHot( ) {
+        while ( true ) {
+            int slot = handHot;
+            handHot = step( slot );
+            if ( slot >= frames ) {
+                removeNonResident( slot );
+                shrinkCold( );
+            } else if ( !hot[slot] ) {
+                if ( test[slot] ) {
+                    test[slot] = false;
+                    shrinkCold( );
+                }
+            } else if ( reference[slot] )
+                reference[slot] = false;
+            else {
+                hot[slot] = false;
+                hotCount--;
+                coldCount++;
+                return;
+            }
+        }
+    }
+
+    // drops the next non-resident entry, ending test periods on the way
+    private void runHandTest( ) {
+        while ( true ) {
+            int slot = handTest;
+            handTest = step( slot );
+            if ( slot >= frames ) {
+                removeNonResident( slot );
+                shrinkCold( );
+                return;
+            }
+            if ( !hot[slot] && test[slot] ) {
+                test[slot] = false;
+                shrinkCold( );
+            }
+        }
+    }
+
+    private void shrinkCold( ) {
+        coldTarget = Math.max( 1, coldTarget - 1 );
+    }
+
+    private void removeNonResident( int slot ) {
+        nonResident.remove( blockOf[slot] );
+        unlink( slot );
+        test[slot] = false;
+        freeSlots[freeCount++] = slot;
+        testCount--;
+    }
+
+    // slot becomes the newest entry, just behind the hot hand
+    private void toHead( int slot ) {
+        unlink( slot );
+        if ( handHot == NONE ) {
+            clock.addLast( 0, slot );
+            handHot = handCold = handTest = slot;
+        } else
+            clock.addBefore( handHot, slot );
+    }
+
+    // takes slot off the clock, moving any hand that points at it
+    private void unlink( int slot ) {
+        if ( clock.listOf( slot ) == NONE )
+            return;
+        int after = ( clock.size( 0 ) == 1 ) ? NONE : step( slot );
+        if ( handHot == slot )
+            handHot = after;
+        if ( handCold == slot )
+            handCold = after;
+        if ( handTest == slot )
+            handTest = after;
+        clock.remove( slot );
+    }
+
+    // the entry after slot, going round the clock
+    private int step( int slot ) {
+        int next = clock.next( slot );
+        return ( next == NONE ) ? clock.first( 0 ) : next;
+    }
+}
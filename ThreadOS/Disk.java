@@ -1,164 +1,323 @@
 import java.io.*;
+import java.util.BitSet;
+import java.util.Vector;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
 
-public class Disk extends Thread {
-    public static final int blockSize = 512;
-    private final int trackSize = 10;
-    private final int transferTime = 20;
-    private final int delayPerTrack = 1;
+public class Disk extends Thread implements BlockDevice {
+    public static int blockSize = 512;   // set at boot by the constructor
+    private final int trackSize = 10;    // C-LOOK orders requests by track
     private int diskSize;
+    private DiskModel model;            // how long each request takes
+    private String path;                // backing file of the image
+    private boolean created;            // path did not exist at boot
+    private DiskStats stats;
 
     private byte data[];
+    private BitSet dirty;   // blocks of data[] written since the last SYNC
 
-    private int command;
-    private final int IDLE = 0;
-    private final int READ = 1;
-    private final int WRITE = 2;
-    private final int SYNC = 3;
-    private boolean readyBuffer;
+    // memory-mapped backing store: the DISK file is mapped in chunks of
+    // at most mapChunk bytes, so images larger than the heap (or 2GB) work
+    private long mapChunk;
+    private boolean mapped;
+    private FileChannel channel;
+    private MappedByteBuffer image[];
 
-    private byte[] buffer;
-    private int currentBlockId;
-    private int targetBlockId;
+    // outstanding requests in arrival order; serviced in C-LOOK order,
+    // up to model.parallelism( ) of them at a time
+    private Vector<DiskRequest> queue;
+    private Vector<DiskRequest> batch;
+
+    private volatile int currentBlockId;
 
     public Disk( int totalBlocks ) {
+	this( "DISK", totalBlocks, 512, false, new HddModel( ) );
+    }
+
+    // blockSize must be a power of two of at least 512 bytes
+    public Disk( String path, int totalBlocks, int blockSize, boolean mapped,
+		 DiskModel model ) {
 	diskSize = ( totalBlocks > 0 ) ? totalBlocks : 1;
-	data = new byte[ diskSize * blockSize ];
-	command = IDLE;
-	readyBuffer = false;
-	buffer = null;
+	this.model = model;
+	this.path = path;
+	Disk.blockSize = ( blockSize >= 512 && ( blockSize & ( blockSize - 1 ) ) == 0 ) ?
+	    blockSize : 512;
+	mapChunk = ( 1 << 30 ) / Disk.blockSize * Disk.blockSize;
+	if ( !mapped && ( long )diskSize * Disk.blockSize > Integer.MAX_VALUE ) {
+	    SysLib.cerr( "threadOS: DISK too large for memory, mapping it\n" );
+	    mapped = true;
+	}
+	this.mapped = mapped;
+	queue = new Vector<DiskRequest>( );
+	batch = new Vector<DiskRequest>( );
+	stats = new DiskStats( );
 	currentBlockId = 0;
-	targetBlockId = 0;
+	// an image that cannot be mapped is loaded instead, if it fits
+	if ( this.mapped && !mapImage( ) ) {
+	    if ( ( long )diskSize * Disk.blockSize > Integer.MAX_VALUE )
+		throw new IllegalStateException( "cannot map " + path );
+	    SysLib.cerr( "threadOS: cannot map " + path + ", loading it\n" );
+	    this.mapped = false;
+	}
+	if ( !this.mapped )
+	    loadImage( );
+    }
+
+    // copies the whole DISK file into data[]
+    private void loadImage( ) {
+	data = new byte[ diskSize * blockSize ];
+	dirty = new BitSet( diskSize );
 	try {
-	    FileInputStream ifstream = new FileInputStream( "DISK" );
+	    FileInputStream ifstream = new FileInputStream( path );
 	    int readableSize = ( ifstream.available( ) < data.length ) ?
 		ifstream.available( ) : data.length; 
 	    ifstream.read( data, 0, readableSize );
 	    ifstream.close( );
 	} catch ( FileNotFoundException e ) {
-	    SysLib.cerr( "threadOS: DISK created\n" );
+	    SysLib.cerr( "threadOS: " + path + " created\n" );
+	    created = true;
 	} catch ( IOException e ) {
 	    SysLib.cerr( e.toString( ) + "\n" );
 	}
     }
 
-    public synchronized boolean read( int blockId, byte buffer[] ) {
-
-	if ( blockId < 0 || blockId > diskSize ) {
-	    SysLib.cerr( "threadOS: a wrong blockId for read\n" );
-	    return false;
-	}
-
-	if ( command == IDLE && readyBuffer == false ) {
-	    this.buffer = buffer;
-	    targetBlockId = blockId;
-	    command = READ;
-	    notify( );
+    // maps the DISK file into memory, growing it to diskSize blocks first;
+    // returns false, with nothing mapped, if the file cannot be
+    private boolean mapImage( ) {
+	long imageSize = ( long )diskSize * blockSize;
+	RandomAccessFile raf = null;
+	try {
+	    File file = new File( path );
+	    if ( !file.exists( ) ) {
+		SysLib.cerr( "threadOS: " + path + " created\n" );
+		created = true;
+	    }
+	    raf = new RandomAccessFile( file, "rw" );
+	    if ( raf.length( ) < imageSize )
+		raf.setLength( imageSize );
+	    channel = raf.getChannel( );
+	    image = new MappedByteBuffer[ ( int )
+					  ( ( imageSize + mapChunk - 1 ) / mapChunk ) ];
+	    for ( int i = 0; i < image.length; i++ ) {
+		long start = i * mapChunk;
+		long size = Math.min( mapChunk, imageSize - start );
+		image[i] = channel.map( FileChannel.MapMode.READ_WRITE,
+					start, size );
+	    }
 	    return true;
-	} else
+	} catch ( IOException e ) {
+	    SysLib.cerr( e.toString( ) + "\n" );
+	    image = null;
+	    channel = null;
+	    try {
+		if ( raf != null )
+		    raf.close( );
+	    } catch ( IOException ignored ) { }
 	    return false;
+	}
     }
 
-    public synchronized boolean write( int blockId, byte buffer[] ) {
+    // true if the backing file was missing and the image started out empty
+    public boolean isNew( ) {
+	return created;
+    }
 
-	if ( blockId < 0 || blockId > diskSize ) {
-	    SysLib.cerr( "threadOS: a wrong blockId for write\n" );
-	    return false;
-	}
+    public String getPath( ) {
+	return path;
+    }
 
-	if ( command == IDLE && readyBuffer == false ) {
-	    this.buffer = buffer;
-	    targetBlockId = blockId;
-	    command = WRITE;
-	    notify( );
-	    return true;
-	} else
-	    return false;
+    // # tracks the head has to cross to reach blockId, the distance seek( )
+    // is charged for
+    public int distanceTo( int blockId ) {
+	return Math.abs( blockId / trackSize - currentBlockId / trackSize );
     }
 
-    public synchronized boolean sync( ) {
-	
-	if ( command == IDLE && readyBuffer == false ) {
-	    command = SYNC;
-	    notify( );
-	    // System.out.println( "DISK sync notified the disk" );
-	    return true;
-	} else
-	    return false;
+    public void report( StringBuffer out ) {
+	stats.report( path, out );
     }
 
-    public synchronized boolean testAndResetReady( ) {
-	if ( command == IDLE && readyBuffer == true ) {
-	    readyBuffer = false;
-	    return true;
-	} else
-	    return false;
+    // # requests waiting to be served
+    public synchronized int pending( ) {
+	return queue.size( ) + batch.size( );
     }
 
-    public synchronized boolean testReady( ) {
-	if ( command == IDLE && readyBuffer == true ) {
-	    return true;
-	} else
-	    return false;
+    // queues a request; returns null if it names a block not on this disk
+    public synchronized DiskRequest submit( DiskRequest request ) {
+
+	if ( request.command != DiskRequest.SYNC
+	     && ( request.blockId < 0 || request.count < 1
+		  || request.blockId + request.count > diskSize
+		  || request.buffer.length < request.count * blockSize ) ) {
+	    SysLib.cerr( "threadOS: a wrong blockId for "
+			 + ( request.command == DiskRequest.READ ?
+			     "read\n" : "write\n" ) );
+	    return null;
+	}
+
+	request.submitted = System.nanoTime( );
+	queue.add( request );
+	notify( );
+	return request;
     }
 
+    // sleeps until a request is queued, then dequeues the next ones to
+    // serve together; a SYNC is always served on its own
     private synchronized void waitCommand( ) {
-	while ( command == IDLE ) {
+	while ( queue.isEmpty( ) ) {
 	    try {
 		wait( );
 	    } catch ( InterruptedException e ) {
 		SysLib.cerr( e.toString( ) + "\n" );
 	    }
-	    readyBuffer = false;
 	}
+	int head = currentBlockId;
+	do {
+	    int next = nextRequest( head );
+	    DiskRequest request = queue.get( next );
+	    if ( request.command == DiskRequest.SYNC && !batch.isEmpty( ) )
+		break;
+	    batch.add( queue.remove( next ) );
+	    if ( request.command == DiskRequest.SYNC )
+		break;
+	    head = request.blockId + request.count - 1;
+	} while ( batch.size( ) < model.parallelism( ) && !queue.isEmpty( ) );
     }
 
+    // C-LOOK: the lowest block at or beyond the head's track, else wrap
+    // around to the lowest block queued. A SYNC is a barrier: it is served
+    // once everything queued before it has been, and nothing after it is
+    // served first.
+    private int nextRequest( int head ) {
+	int trackStart = head / trackSize * trackSize;
+	int ahead = -1;
+	int lowest = -1;
+	for ( int i = 0; i < queue.size( ); i++ ) {
+	    DiskRequest request = queue.get( i );
+	    if ( request.command == DiskRequest.SYNC )
+		return ( i == 0 ) ? 0 : ( ahead != -1 ) ? ahead : lowest;
+	    if ( lowest == -1 || request.blockId < queue.get( lowest ).blockId )
+		lowest = i;
+	    if ( request.blockId >= trackStart &&
+		 ( ahead == -1 ||
+		   request.blockId < queue.get( ahead ).blockId ) )
+		ahead = i;
+	}
+	return ( ahead != -1 ) ? ahead : lowest;
+    }
+
+    // waits out the batch as timed by the device model: requests served in
+    // parallel overlap, so the slowest one sets the delay. The head ends on
+    // the last block touched.
     private void seek( ) {
-	int seekTime = transferTime + delayPerTrack 
-	    * Math.abs( targetBlockId/trackSize - currentBlockId/trackSize );
+	long seekTime = 0;
+	long now = System.nanoTime( );
+	for ( int i = 0; i < batch.size( ); i++ ) {
+	    DiskRequest request = batch.get( i );
+	    stats.started( request, now - request.submitted,
+			   distanceTo( request.blockId ) );
+	    if ( request.command == DiskRequest.SYNC ) {
+		seekTime = model.serviceTime( currentBlockId, currentBlockId, 1 );
+		continue;
+	    }
+	    seekTime = Math.max( seekTime,
+				 model.serviceTime( currentBlockId,
+						    request.blockId,
+						    request.count ) );
+	    currentBlockId = request.blockId + request.count - 1;
+	}
+	long deadline = System.nanoTime( ) + seekTime * 1000;
+	for ( long left = seekTime * 1000; left > 0;
+	      left = deadline - System.nanoTime( ) )
+	    LockSupport.parkNanos( left );
+    }
+
+    private void finishCommand( ) {
+	for ( int i = 0; i < batch.size( ); i++ )
+	    batch.get( i ).complete( ); // wakes the thread waiting on it
+	batch.clear( );
+    }
+
+    // writes each run of dirty blocks of data[] in place in the DISK file
+    private void syncDirty( ) {
 	try {
-	    Thread.sleep( seekTime );
-	} catch( InterruptedException e ) {
-	    SysLib.cerr( e.toString( ) + "\n" );
+	    if ( channel == null )
+		channel = new RandomAccessFile( path, "rw" ).getChannel( );
+	    for ( int first = dirty.nextSetBit( 0 ); first >= 0;
+		  first = dirty.nextSetBit( first ) ) {
+		int end = dirty.nextClearBit( first );
+		ByteBuffer run = ByteBuffer.wrap( data, first * blockSize,
+						  ( end - first ) * blockSize );
+		long position = ( long )first * blockSize;
+		while ( run.hasRemaining( ) )
+		    position += channel.write( run, position );
+		first = end;
+	    }
+	    dirty.clear( );
+	} catch ( IOException e ) {
+	    SysLib.cerr( e.toString( ) );
 	}
-	currentBlockId = targetBlockId;
     }
 
-    private synchronized void finishCommand( ) {
-	command = IDLE;
-	readyBuffer = true;
-	SysLib.disk( ); // a disk interrupt
+    private void readBlock( int blockId, byte buffer[], int start ) {
+	if ( mapped ) {
+	    long offset = ( long )blockId * blockSize;
+	    image[ ( int )( offset / mapChunk ) ]
+		.get( ( int )( offset % mapChunk ), buffer, start, blockSize );
+	} else
+	    System.arraycopy( data, blockId * blockSize, 
+			      buffer, start, 
+			      blockSize );
+    }
+
+    private void writeBlock( int blockId, byte buffer[], int start ) {
+	if ( mapped ) {
+	    long offset = ( long )blockId * blockSize;
+	    image[ ( int )( offset / mapChunk ) ]
+		.put( ( int )( offset % mapChunk ), buffer, start, blockSize );
+	} else
+	    System.arraycopy( buffer, start, 
+			      data, blockId * blockSize, 
+			      blockSize );
+    }
+
+    private void perform( DiskRequest request ) {
+	switch( request.command ) {
+	case DiskRequest.READ:
+	    for ( int i = 0; i < request.count; i++ )
+		readBlock( request.blockId + i, request.buffer, i * blockSize );
+	    break;
+	case DiskRequest.WRITE:
+	    for ( int i = 0; i < request.count; i++ )
+		writeBlock( request.blockId + i, request.buffer, i * blockSize );
+	    if ( !mapped )
+		dirty.set( request.blockId, request.blockId + request.count );
+	    break;
+	case DiskRequest.SYNC:
+	    if ( mapped ) {
+		// only the pages dirtied since the last force hit the file
+		for ( int i = 0; i < image.length; i++ )
+		    image[i].force( );
+		break;
+	    }
+	    syncDirty( );
+	    // SysLib.cerr( "threadOS: DISK synchronized\n" );
+	    break;
+	}
     }
 
     public void run ( ) {
 	
 	while ( true ) {
 	    waitCommand( );
+	    long start = System.nanoTime( );
 	    seek( );
-	    // System.out.println( "Disk: command = " + command );
-	    switch( command ) {
-	    case READ:
-		System.arraycopy( data, targetBlockId * blockSize, 
-				  buffer, 0, 
-				  blockSize );
-		break;
-	    case WRITE:
-		System.arraycopy( buffer, 0, 
-				  data, targetBlockId * blockSize, 
-				  blockSize );
-		break;
-	    case SYNC:
-		try {
-		    FileOutputStream ofstream = new FileOutputStream( "DISK" );
-		    ofstream.write( data );
-		    ofstream.close( );
-		} catch ( FileNotFoundException e ) {
-		    SysLib.cerr( e.toString( ) );
-		} catch ( IOException e ) {
-		    SysLib.cerr( e.toString( ) );
-		}
-		// SysLib.cerr( "threadOS: DISK synchronized\n" );
-		break;
-	    }
+	    for ( int i = 0; i < batch.size( ); i++ )
+		perform( batch.get( i ) );
+	    long service = System.nanoTime( ) - start;
+	    for ( int i = 0; i < batch.size( ); i++ )
+		stats.finished( service );
 	    finishCommand( );
 	}
     }
@@ -0,0 +1,26 @@
+/** ========================================== DiskModel.java ==============================================
+ * SUMMARY
+ * Latency model of the storage device behind a Disk. The disk thread asks
+ * the model how long each request takes and sleeps that long, so the same
+ * file system can be timed against a RAM disk, an SSD or a spinning HDD.
+ * Chosen at boot with "-device ram|ssd|hdd" (hdd by default).
+ */
+
+public interface DiskModel {
+
+    // microseconds to move count blocks starting at blockId, with the
+    // head (or the last block touched) at headBlockId
+    long serviceTime( int headBlockId, int blockId, int count );
+
+    // # requests the device services at the same time
+    int parallelism( );
+
+    // returns the model named at boot, or the HDD model for unknown names
+    static DiskModel forName( String name ) {
+        if ( name.equals( "ram" ) )
+            return new RamModel( );
+        if ( name.equals( "ssd" ) )
+            return new SsdModel( );
+        return new HddModel( );
+    }
+}
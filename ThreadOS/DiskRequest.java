@@ -0,0 +1,89 @@
+/** ========================================== DiskRequest.java ==============================================
+ * SUMMARY
+ * One command queued on a Disk: READ or WRITE of a run of count
+ * consecutive blocks, or SYNC of the whole image. The disk thread services
+ * requests in its own order and completes each one; the submitting thread
+ * waits on its own request instead of on a ready flag shared by every
+ * thread using the disk. A device built from several disks serves one
+ * request as pieces on its members; the last piece to finish completes
+ * the whole request.
+ */
+
+public class DiskRequest {
+    public final static int READ  = 1;
+    public final static int WRITE = 2;
+    public final static int SYNC  = 3;
+
+    final int command;     // READ, WRITE or SYNC
+    final int blockId;     // first target block (ignored by SYNC)
+    final int count;       // # consecutive blocks moved by this command
+    final byte buffer[];   // count * blockSize bytes read into or written from
+
+    private boolean done;  // set once by the disk thread
+    long submitted;        // System.nanoTime( ) when queued, for DiskStats
+
+    final DiskRequest whole;  // request this is a piece of, or null
+    private int pieces;       // # pieces of this request still outstanding
+
+    public DiskRequest( int command, int blockId, byte buffer[] ) {
+        this( command, blockId, 1, buffer );
+    }
+
+    public DiskRequest( int command, int blockId, int count, byte buffer[] ) {
+        this( command, blockId, count, buffer, null );
+    }
+
+    // a piece of whole served by one member of a multi-disk device
+    DiskRequest( int command, int blockId, int count, byte buffer[],
+                 DiskRequest whole ) {
+        this.command = command;
+        this.blockId = blockId;
+        this.count = count;
+        this.buffer = buffer;
+        this.whole = whole;
+        done = false;
+        pieces = 0;
+    }
+
+    // polls whether the disk has serviced this request
+    public synchronized boolean isDone( ) {
+        return done;
+    }
+
+    // sleeps until the disk has serviced this request
+    public synchronized void await( ) {
+        while ( !done ) {
+            try {
+                wait( );
+            } catch ( InterruptedException e ) {
+                SysLib.cerr( e.toString( ) + "\n" );
+            }
+        }
+    }
+
+    // called by the disk thread when the command has been carried out
+    void complete( ) {
+        synchronized ( this ) {
+            done = true;
+            notifyAll( );
+        }
+        if ( whole != null )
+            whole.pieceDone( );
+    }
+
+    // a device serving this request as n pieces calls this before
+    // submitting them
+    synchronized void split( int n ) {
+        pieces = n;
+    }
+
+    // the last piece to finish completes this request
+    private void pieceDone( ) {
+        boolean last;
+        synchronized ( this ) {
+            last = ( --pieces == 0 );
+        }
+        if ( last )
+            complete( );
+    }
+}
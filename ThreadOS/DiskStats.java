@@ -0,0 +1,79 @@
+/** ========================================== DiskStats.java ==============================================
+ * SUMMARY
+ * Counters kept by one Disk: requests and blocks moved, tracks crossed
+ * (in total and as a histogram of power-of-two buckets), time requests
+ * spent queued before the disk picked them up, and time spent serving
+ * them. Read with SysLib.dstat( ) or the Loader's "s" command.
+ */
+
+public class DiskStats {
+    private final static int BUCKETS = 12;   // 0, 1, 2-3, ..., 1024+ tracks
+
+    private long reads, writes, syncs;       // requests served
+    private long blocksRead, blocksWritten;
+    private long seekTracks;                 // tracks crossed in total
+    private long seekHistogram[] = new long[BUCKETS];
+    private long waitNanos;                  // queued, not yet picked up
+    private long serviceNanos;               // picked up until completed
+
+    // a request leaves the queue after waiting waitNanos
+    public synchronized void started( DiskRequest request, long waitNanos,
+                                      int tracks ) {
+        this.waitNanos += waitNanos;
+        switch ( request.command ) {
+        case DiskRequest.READ:
+            reads++;
+            blocksRead += request.count;
+            break;
+        case DiskRequest.WRITE:
+            writes++;
+            blocksWritten += request.count;
+            break;
+        case DiskRequest.SYNC:
+            syncs++;
+            return;   // the head does not move for a sync
+        }
+        seekTracks += tracks;
+        int bucket = 0;
+        while ( tracks > 0 && bucket < BUCKETS - 1 ) {
+            tracks >>= 1;
+            bucket++;
+        }
+        seekHistogram[bucket]++;
+    }
+
+    // a request completed after serviceNanos of service
+    public synchronized void finished( long serviceNanos ) {
+        this.serviceNanos += serviceNanos;
+    }
+
+    // appends a readable summary, one device per call
+    public synchronized void report( String name, StringBuffer out ) {
+        long requests = reads + writes + syncs;
+        long seeks = reads + writes;
+        out.append( name + ": " + reads + " reads (" + blocksRead
+                    + " blocks), " + writes + " writes (" + blocksWritten
+                    + " blocks), " + syncs + " syncs\n" );
+        out.append( "  seek: " + seekTracks + " tracks, "
+                    + average( seekTracks, seeks, 1 ) + " per request;" );
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            if ( seekHistogram[i] == 0 )
+                continue;
+            int low = ( i == 0 ) ? 0 : 1 << ( i - 1 );
+            int high = ( 1 << i ) - 1;
+            out.append( " " + ( ( low >= high ) ? "" + low :
+                                ( i == BUCKETS - 1 ) ? low + "+" :
+                                low + "-" + high )
+                        + ":" + seekHistogram[i] );
+        }
+        out.append( "\n  queued " + average( waitNanos, requests, 1000000 )
+                    + " ms, served " + average( serviceNanos, requests, 1000000 )
+                    + " ms per request\n" );
+    }
+
+    private static String average( long total, long n, long unit ) {
+        if ( n == 0 )
+            return "0";
+        return String.format( "%.2f", ( double )total / unit / n );
+    }
+}
@@ -0,0 +1,79 @@
+/** ========================================== EscaPolicy.java ==============================================
+ * SUMMARY
+ * Enhanced second chance. Frames fall in four classes by their (reference,
+ * dirty) bits; the clock hand looks for a (0, 0) frame, then for a (0, 1)
+ * frame while clearing reference bits, and repeats, so a clean unused
+ * block is given up before one that costs a write.
+ */
+
+public class EscaPolicy implements CachePolicy {
+    private boolean reference[];
+    private boolean dirty[];
+    private boolean present[];   // frame holds a block this policy tracks
+    private int hand;
+
+    public EscaPolicy( int frames ) {
+        reference = new boolean[frames];
+        dirty = new boolean[frames];
+        present = new boolean[frames];
+        hand = frames - 1;
+    }
+
+    public String name( ) {
+        return "esca";
+    }
+
+    public int victim( int blockId, Frames candidates ) {
+        boolean any = false;
+        while ( true ) {
+            // (0, 0) without touching any bit
+            for ( int i = 0; i < reference.length; i++ ) {
+                hand = ( hand + 1 ) % reference.length;
+                if ( !present[hand] || !candidates.evictable( hand ) )
+                    continue;
+                if ( !reference[hand] && !dirty[hand] )
+                    return evict( hand );
+                any = true;
+            }
+            if ( !any )
+                return NONE;
+            // (0, 1), taking away second chances on the way
+            for ( int i = 0; i < reference.length; i++ ) {
+                hand = ( hand + 1 ) % reference.length;
+                if ( present[hand] && !reference[hand] && dirty[hand]
+                     && candidates.evictable( hand ) )
+                    return evict( hand );
+                reference[hand] = false;
+            }
+        }
+    }
+
+    private int evict( int frame ) {
+        present[frame] = false;
+        return frame;
+    }
+
+    public void inserted( int frame, int blockId ) {
+        present[frame] = true;
+        reference[frame] = true;
+        dirty[frame] = false;
+    }
+
+    public void referenced( int frame ) {
+        reference[frame] = true;
+    }
+
+    public void dirtied( int frame ) {
+        dirty[frame] = true;
+    }
+
+    public void cleaned( int frame ) {
+        dirty[frame] = false;
+    }
+
+    public void removed( int frame ) {
+        present[frame] = false;
+        reference[frame] = false;
+        dirty[frame] = false;
+    }
+}
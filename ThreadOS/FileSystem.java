@@ -17,7 +17,12 @@
  * 	seek
  * 	close
  * 
+ * Each sync records the blocks hit most often in the cache, and the next
+ * boot starts reading them back in, so the cache does not start cold.
  */
+
+import java.nio.ByteBuffer;
+
 public class FileSystem {
 	
     private SuperBlock superblock;
@@ -48,6 +53,9 @@ public class FileSystem {
     		directory.bytes2directory(data);
     	}
     	close( entry );
+
+    	// start bringing back what was hot before the last shutdown
+    	warmUp();
     }
 
 	 //---------------------- int sync( ) ---------------------
@@ -65,10 +73,74 @@ public class FileSystem {
     	write(root, directory.directory2bytes());
         // close root directory
     	close(root);
+        // write back inodes still only changed in memory
+    	filetable.flushInodes();
+        // remember the hottest blocks for the next boot
+    	recordWarmUp();
         // sync superblock
     	superblock.sync();
     }
 
+	 //---------------------- void recordWarmUp( ) ---------------------
+	/**
+	 * Lists the cache's hottest blocks in block order in the warm-up block,
+	 * taking one from the free list the first time. The list is a count
+	 * followed by that many block numbers.
+	 */
+	private void recordWarmUp()
+	{
+		int[] blocks = new int[Disk.blockSize / 4 - 1];
+		int count = SysLib.chot(blocks);
+		if (superblock.warmUpBlock == 0)
+		{
+			int free = superblock.nextFreeBlock();
+			if (free < 0)
+				return;
+			superblock.warmUpBlock = free;
+		}
+		java.util.Arrays.sort(blocks, 0, count);
+
+		ByteBuffer list = SysLib.cpin(superblock.warmUpBlock, true);
+		list.putInt(0, count);
+		for (int i = 0; i < count; i++)
+			list.putInt(4 + i * 4, blocks[i]);
+		SysLib.cunpin(superblock.warmUpBlock, list);
+	}
+
+	 //---------------------- void warmUp( ) ---------------------
+	/**
+	 * Prefetches the blocks listed in the warm-up block, one run of
+	 * consecutive blocks at a time. The cache reads them in the
+	 * background, so booting does not wait for them.
+	 */
+	private void warmUp()
+	{
+		if (superblock.warmUpBlock == 0)
+			return;
+		ByteBuffer list = SysLib.cpin(superblock.warmUpBlock, false);
+		int count = Math.min(list.getInt(0), Disk.blockSize / 4 - 1);
+		int runStart = -1;
+		int runLength = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int block = list.getInt(4 + i * 4);
+			if (block <= 0 || block >= superblock.totalBlocks)
+				continue;
+			if (runLength > 0 && block == runStart + runLength)
+			{
+				runLength++;
+				continue;
+			}
+			if (runLength > 0)
+				SysLib.cprefetch(runStart, runLength);
+			runStart = block;
+			runLength = 1;
+		}
+		if (runLength > 0)
+			SysLib.cprefetch(runStart, runLength);
+		SysLib.cunpin(superblock.warmUpBlock, list);
+	}
+
 	 //---------------------- int format( int ) ---------------------
 	/**
 	 * Full format of the disk, erases all the content on the disk.
@@ -78,15 +150,30 @@ public class FileSystem {
 	 * @return success always
 	 */
     public boolean format( int files){
+        // changed inodes of the old file system must not overwrite the new
+    	filetable.dropInodes();
         // format superblock for number of files
     	superblock.format(files);
         // New directory, and register root "/"
     	directory = new Directory(superblock.inodeBlocks);
         // New File Table with new directory
     	filetable = new FileTable(directory);
+        // the new superblock and inodes may still sit dirty in the cache
+    	SysLib.csync();
         return true;
 	}
 	
+	 //---------------------- int flushInodes( ) ---------------------
+	/**
+	 * Writes back the inodes changed since they were last written, for
+	 * InodeFlusher
+	 * @return # inode blocks written
+	 */
+    public int flushInodes()
+    {
+    	return filetable.flushInodes();
+    }
+
 	 //---------------------- int open( FileTableEntry, String ) ---------------------
 	/** 
 	 * @param filename name of file opening
@@ -131,6 +218,9 @@ public class FileSystem {
 	//---------------------- int read( FileTableEntry, byte[] ) ---------------------
 	/**
 	 * Checks target block to make sure it is valid to read from
+	 * Each block's bytes are copied from the cache straight into buffer,
+	 * so a read allocates nothing; blocks not yet cached are loaded ahead
+	 * in runs of physically contiguous blocks
 	 * @param entry table entry reading from
 	 * @param buffer size of data being read
 	 * @return amount of data read
@@ -141,59 +231,163 @@ public class FileSystem {
 		if ((entry.mode == "w") || (entry.mode == "a"))
 			return -1;
 
+        synchronized(entry)
+        {
+        	// the length can't change while entry is held
+        	int fileSize = entry.inode.length;
+        	readAhead(entry, buffer.length, fileSize);
+        	int bytesRead = readAt(entry, buffer, entry.seekPtr, fileSize);
+        	entry.seekPtr += bytesRead;
+        	return bytesRead;
+        }
+	}
+
+	//---------------------- int pread( FileTableEntry, byte[], int ) ---------------------
+	/**
+	 * Reads buffer.length bytes from offset on, leaving the seek pointer
+	 * alone. Takes no lock on entry, so threads sharing it read in parallel;
+	 * a read spanning several blocks has them prefetched together
+	 * @param entry table entry reading from
+	 * @param buffer size of data being read
+	 * @param offset of the first byte in the file
+	 * @return amount of data read, -1 if failure
+	 */
+	public int pread(FileTableEntry entry, byte[] buffer, int offset)
+	{
+		if (entry.mode == "w" || entry.mode == "a" || offset < 0)
+			return -1;
+
+		int fileSize = entry.inode.length;
+		int end = Math.min(offset + buffer.length, fileSize);
+		if (end > offset && (end - 1) / Disk.blockSize > offset / Disk.blockSize)
+			prefetch(entry, offset / Disk.blockSize, (end - 1) / Disk.blockSize + 1);
+		return readAt(entry, buffer, offset, fileSize);
+	}
+
+	//---------------------- int readAt( FileTableEntry, byte[], int, int ) ---------------------
+	/**
+	 * Copies the file's bytes from position on into buffer, block by block
+	 * @param position of the first byte in the file
+	 * @param fileSize length of the file
+	 * @return amount of data read
+	 */
+	private int readAt(FileTableEntry entry, byte[] buffer, int position, int fileSize)
+	{
         int size  = buffer.length;   //set total size of data to read
         int bytesRead = 0;            //track data read
         int bytesLeft = 0;           
-        
-        synchronized(entry)
+
+        while (position < fileSize && (size > 0))
         {
-        	while (entry.seekPtr < fsize(entry) && (size > 0))
-        	{
-        		int currentBlock = entry.inode.fetchTarget(entry.seekPtr);
-        		if (currentBlock == -1)
-        			break;
+        	int currentBlock = entry.inode.fetchTarget(position);
+        	if (currentBlock == -1)
+        		break;
+
+			// intialize iterative values
+        	int dataOffset = position % Disk.blockSize;
+        	int fileLeft = fileSize - position;
+
+			// Assign bytes left to read, up to the end of this block
+			bytesLeft = (fileLeft < size) ? fileLeft : size;
+			if (bytesLeft > Disk.blockSize - dataOffset)
+				bytesLeft = Disk.blockSize - dataOffset;
+
+			// Copy data & adjust iteratives
+			SysLib.cread(currentBlock, dataOffset, buffer, bytesRead, bytesLeft);
+        	bytesRead += bytesLeft;
+        	position += bytesLeft;
+        	size -= bytesLeft;
+        }
+        return bytesRead;
+	}
 	
-				// read current data
-				byte[] data = new byte[Disk.blockSize];
-        		SysLib.rawread(currentBlock, data);
-				
-				// intialize iterative values
-        		int dataOffset = entry.seekPtr % Disk.blockSize;
-        		int blocksLeft = Disk.blockSize - bytesLeft;
-        		int fileLeft = fsize(entry) - entry.seekPtr;
-				
-				// Assign blocks left to read
-        		if (blocksLeft < fileLeft)
-					bytesLeft = blocksLeft;
-				else
-					bytesLeft = fileLeft;
+	//---------------------- void readAhead( FileTableEntry, int, int ) ---------------------
+	private final int INITIAL_WINDOW = 4;
+	private final int MAX_WINDOW = 32;
 
-				if (bytesLeft > size)
-					bytesLeft = size;
+	/**
+	 * Tracks whether entry is being read sequentially. While it is, the
+	 * blocks this read needs and a window of blocks past them are prefetched
+	 * into the cache, in runs of physically consecutive blocks, so the disk
+	 * can serve them together. The window doubles on every read that moves
+	 * on to the next block, up to MAX_WINDOW, and closes on any other read;
+	 * such a read still prefetches its own blocks if it needs several.
+	 * @param entry table entry about to be read
+	 * @param length bytes the read asks for
+	 * @param fileSize length of the file
+	 */
+	private void readAhead(FileTableEntry entry, int length, int fileSize)
+	{
+		int blockSize = Disk.blockSize;
+		int end = Math.min(entry.seekPtr + length, fileSize);
+		if (end <= entry.seekPtr)
+			return;
+		int first = entry.seekPtr / blockSize;
+		int last = (end - 1) / blockSize;
+
+		if (first == entry.nextBlock)
+			entry.window = (entry.window == 0) ? INITIAL_WINDOW
+					: Math.min(entry.window * 2, MAX_WINDOW);
+		else if (first != entry.nextBlock - 1)
+		{
+			// not sequential: stop reading ahead
+			entry.window = 0;
+			entry.aheadUntil = 0;
+		}
+		entry.nextBlock = last + 1;
+		if (entry.window == 0 && first == last)
+			return;
+
+		int fileBlocks = (fileSize + blockSize - 1) / blockSize;
+		int from = Math.max(first, entry.aheadUntil);
+		int until = Math.min(fileBlocks, last + 1 + entry.window);
+		prefetch(entry, from, until);
+		if (entry.window > 0)
+			entry.aheadUntil = Math.max(entry.aheadUntil, until);
+	}
 
-				// Copy data & adjust iteratives
-        		System.arraycopy(data, dataOffset, buffer, bytesRead, bytesLeft);
-        		bytesRead += bytesLeft;
-        		entry.seekPtr += bytesLeft;
-        		size -= bytesLeft;
-        	}
-        	return bytesRead;
-        }
+	//---------------------- void prefetch( FileTableEntry, int, int ) ---------------------
+	/**
+	 * Starts loading the file's blocks from .. until - 1 into the cache, in
+	 * runs of physically consecutive blocks
+	 * @param from first file block
+	 * @param until file block past the last
+	 */
+	private void prefetch(FileTableEntry entry, int from, int until)
+	{
+		int runStart = -1;
+		int runLength = 0;
+		for (int i = from; i < until; i++)
+		{
+			int location = entry.inode.fetchTarget(i * Disk.blockSize);
+			if (runLength > 0 && location == runStart + runLength)
+			{
+				runLength++;
+				continue;
+			}
+			if (runLength > 0)
+				SysLib.cprefetch(runStart, runLength);
+			runStart = location;
+			runLength = (location < 0) ? 0 : 1;
+		}
+		if (runLength > 0)
+			SysLib.cprefetch(runStart, runLength);
 	}
-	
+
 	//---------------------- int write( FileTableEntry, byte[] ) ---------------------
 	/** 
 	 * Writes the contents of buffer to the file indicated by entry.
 	 * Increments the seek pointer by the number of bytes to have been written.
+	 * Blocks that land at consecutive disk locations (including ones just
+	 * allocated) are written as one vectored run. Nothing is read first:
+	 * blocks the data covers whole, and blocks just allocated (which hold
+	 * zeros apart from the data), are written whole, and a block written in
+	 * part gets just those bytes, the cache reading the rest only if needed.
 	 * @param entry file table entry writing to
 	 * @param buffer contents to be written
 	 * @return number of bytes written, -1 if failure
 	 */
     public int write(FileTableEntry entry, byte[] buffer){
-    	int bytesWritten = 0;
-		int bufferSize = buffer.length;
-		int blockSize = Disk.blockSize;
-
 		if (entry == null || entry.mode == "r")
 		{
 			return -1;
@@ -201,76 +395,170 @@ public class FileSystem {
 
 		synchronized (entry)
 		{
-			while (bufferSize > 0)
-			{
-				int location = entry.inode.fetchTarget(entry.seekPtr);
+			int bytesWritten = writeAt(entry, buffer, entry.seekPtr);
+			entry.seekPtr += bytesWritten;
+			return bytesWritten;
+		}
+	}
+
+	//---------------------- int pwrite( FileTableEntry, byte[], int ) ---------------------
+	/**
+	 * Writes the contents of buffer to the file from offset on, leaving the
+	 * seek pointer alone. Still holds entry while writing, since a write
+	 * may allocate blocks and grow the file. An entry opened "a" only
+	 * appends, so it may write at the file's length and nowhere else.
+	 * @param entry file table entry writing to
+	 * @param buffer contents to be written
+	 * @param offset of the first byte in the file, at most its length
+	 * @return number of bytes written, -1 if failure
+	 */
+	public int pwrite(FileTableEntry entry, byte[] buffer, int offset)
+	{
+		if (entry == null || entry.mode == "r" || offset < 0)
+			return -1;
+
+		synchronized (entry)
+		{
+			if (offset > entry.inode.length
+				|| (entry.mode == "a" && offset != entry.inode.length))
+				return -1;
+			return writeAt(entry, buffer, offset);
+		}
+	}
 
-				// if current block null
-				if (location == -1)
-					location = assignLocation(entry);
+	//---------------------- int writeAt( FileTableEntry, byte[], int ) ---------------------
+	/**
+	 * Writes buffer to the file from position on, growing the file if it
+	 * ends past its length. The inode is only marked changed; it is written
+	 * back on close, sync or by InodeFlusher. The caller holds entry.
+	 * @param position of the first byte in the file
+	 * @return number of bytes written
+	 */
+	private int writeAt(FileTableEntry entry, byte[] buffer, int position)
+	{
+    	int bytesWritten = 0;
+		int bufferSize = buffer.length;
+		int blockSize = Disk.blockSize;
 
-				// assign a buffer & read at location
-				byte [] tempBuff = new byte[blockSize];
-				SysLib.rawread(location, tempBuff);
+		int allocated = -1;   // block allocated for the next run
+		while (bufferSize > 0)
+		{
+			int location = entry.inode.fetchTarget(position);
+			boolean fresh = (location == allocated);
+			allocated = -1;
 
-				int tempPtr = entry.seekPtr % blockSize;
-				int diff = blockSize - tempPtr;
+			// if current block null
+			if (location == -1)
+			{
+				location = assignLocation(entry, position);
+				fresh = true;
+			}
+			if (location == -1)
+				break;
 
-				// Rainy Day, writing the final bits, exit
-				if (diff > bufferSize)
-				{
-					System.arraycopy(buffer, bytesWritten, tempBuff, tempPtr, bufferSize);
-					SysLib.rawwrite(location, tempBuff);
+			int tempPtr = position % blockSize;
 
-					entry.seekPtr += bufferSize;
-					bytesWritten += bufferSize;
-					bufferSize = 0;
-				}
-				// Sunny Day, writing bits, continue
-				else {
-					System.arraycopy(buffer, bytesWritten, tempBuff, tempPtr, diff);
-					SysLib.rawwrite(location, tempBuff);
-
-					entry.seekPtr += diff;
-					bytesWritten += diff;
-					bufferSize -= diff;
+			// grow the run while the next block is needed and adjacent
+			int runBlocks = 1;
+			boolean lastFresh = fresh;
+			while (tempPtr + bufferSize > runBlocks * blockSize)
+			{
+				int nextPtr = position - tempPtr + runBlocks * blockSize;
+				int next = entry.inode.fetchTarget(nextPtr);
+				boolean nextFresh = (next == -1);
+				if (nextFresh)
+					next = assignLocation(entry, nextPtr);
+				if (next != location + runBlocks)
+				{
+					if (nextFresh)
+						allocated = next;
+					break;
 				}
+				runBlocks++;
+				lastFresh = nextFresh;
 			}
 
-			// update inode length if seekPtr larger
+			int diff = runBlocks * blockSize - tempPtr;
 
-			if (entry.seekPtr > entry.inode.length)
+			// Rainy Day, writing the final bits
+			if (diff > bufferSize)
+				diff = bufferSize;
+			int end = tempPtr + diff;
+
+			// first and last block are written whole if covered or fresh
+			boolean headWhole = fresh
+				|| (tempPtr == 0 && (runBlocks > 1 || end == blockSize));
+			boolean tailWhole = (runBlocks == 1) ? headWhole
+				: (lastFresh || end == runBlocks * blockSize);
+
+			if (!headWhole)
 			{
-				entry.inode.length = entry.seekPtr;
+				// just the bytes written; the cache reads the rest of
+				// the block only if it needs them
+				int length = (runBlocks == 1) ? diff : blockSize - tempPtr;
+				SysLib.cwrite(location, tempPtr, buffer, bytesWritten, length);
 			}
-			entry.inode.toDisk(entry.iNumber);
-			return bytesWritten;
+			if (!tailWhole && runBlocks > 1)
+			{
+				int length = end - (runBlocks - 1) * blockSize;
+				SysLib.cwrite(location + runBlocks - 1, 0, buffer,
+							  bytesWritten + diff - length, length);
+			}
+
+			// the blocks written whole, as one run
+			int firstWhole = headWhole ? 0 : 1;
+			int lastWhole = tailWhole ? runBlocks : runBlocks - 1;
+			if (firstWhole < lastWhole)
+			{
+				byte [] tempBuff = new byte[(lastWhole - firstWhole) * blockSize];
+				int start = Math.max(tempPtr, firstWhole * blockSize);
+				int stop = Math.min(end, lastWhole * blockSize);
+				System.arraycopy(buffer, bytesWritten + start - tempPtr, tempBuff,
+								 start - firstWhole * blockSize, stop - start);
+				if (lastWhole - firstWhole == 1)
+					SysLib.cwrite(location + firstWhole, tempBuff);
+				else
+					SysLib.cwritev(location + firstWhole, tempBuff);
+			}
+
+			position += diff;
+			bytesWritten += diff;
+			bufferSize -= diff;
 		}
+
+		// update inode length if position larger
+		if (position > entry.inode.length)
+		{
+			entry.inode.length = position;
+		}
+		filetable.markDirty(entry.iNumber, entry.inode);
+		return bytesWritten;
 	}
 
 	//---------------------- int assignLocation( FileTableEntry ) ---------------------
 	/**
 	 * Helper function for handling iNode return values
 	 * Assumption: location == -1
+	 * @param seekPtr file offset the new block backs
 	 * @return newLocation
 	 */
-	private int assignLocation(FileTableEntry ftEnt)
+	private int assignLocation(FileTableEntry ftEnt, int seekPtr)
 	{
-		short newLocation = (short) superblock.nextFreeBlock();
+		int newLocation = superblock.nextFreeBlock();
 
-		int testPtr = ftEnt.inode.getFreeBlockIndex(ftEnt.seekPtr, newLocation);
+		int testPtr = ftEnt.inode.getFreeBlockIndex(seekPtr, newLocation);
 
 		// error on write of nullptr
 		if (testPtr == -3)
 		{
-			short freeBlock = (short) this.superblock.nextFreeBlock();
+			int freeBlock = this.superblock.nextFreeBlock();
 
 			// indirect pointer is empty
 			if (!ftEnt.inode.setIndexBlock(freeBlock))
 				return -1;
 
 			// check block pointer error
-			if (ftEnt.inode.getFreeBlockIndex(ftEnt.seekPtr, newLocation) != 0)
+			if (ftEnt.inode.getFreeBlockIndex(seekPtr, newLocation) != 0)
 				return -1;
 
 		}
@@ -344,22 +632,25 @@ public class FileSystem {
 		{
 			if (ftEnt.inode.direct[blockId] != -1)
 			{
-				superblock.returnBlock(blockId);
+				superblock.returnBlock(ftEnt.inode.direct[blockId]);
 				ftEnt.inode.direct[blockId] = -1;
 			}
 		}
 
+		int indexBlock = ftEnt.inode.indirect;
 		byte [] data = ftEnt.inode.freeIndirect();
 
 		if (data != null)
 		{
-			short blockId;
-			while((blockId = SysLib.bytes2short(data, 0)) != -1)
+			int blockId;
+			for (int i = 0; i < Inode.pointersPerBlock()
+					&& (blockId = Inode.getPointer(data, i)) != -1; i++)
 			{
 				superblock.returnBlock(blockId);
 			}
+			superblock.returnBlock(indexBlock);
 		}
-		ftEnt.inode.toDisk(ftEnt.iNumber);
+		filetable.markDirty(ftEnt.iNumber, ftEnt.inode);
 		return true;
     }
 
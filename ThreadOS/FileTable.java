@@ -1,3 +1,7 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
 /** ========================================== FileTable.java ==============================================
  * @author Jeffrey Murray Jr
@@ -13,6 +17,8 @@ import java.util.Vector;
  * PURPOSE
  * Create a new FTE and adds to FileTable
  * Removes a FTE from FileTable
+ * Holds changed inodes in memory until close, sync or InodeFlusher writes
+ * them, patching every inode of one inode block under a single pin
  *
  */
 
@@ -29,9 +35,13 @@ public class FileTable {
    // the root directory
    private Directory dir;
 
+   // inodes changed since last written, in iNumber (so block) order
+   private TreeMap<Short, Inode> dirty;
+
    public FileTable( Directory directory ) {
       // instantiate a file (structure) table
       FileTable = new Vector<FileTableEntry>( );
+      dirty = new TreeMap<Short, Inode>( );
 
       // receive a reference to the Directory
       dir = directory;
@@ -62,7 +72,7 @@ public class FileTable {
          // File Exists in Directory
          if(iNumber >= 0)
          {
-            inode = new Inode(iNumber); // assign iNode
+            inode = load(iNumber); // assign iNode
 
             // bad file check ( iNode is out of bounds! )
             if(inode.flag < UNUSED || inode.flag > READ) { return null; }
@@ -114,8 +124,8 @@ public class FileTable {
       }
       // increment this inode's count
       inode.count++;
-      // immediately write back this inode to the disk
-      inode.toDisk(iNumber);
+      // written back with the next flush
+      dirty.put(iNumber, inode);
       // return a reference to this file (structure) table entry
       FileTableEntry entry = new FileTableEntry(inode, iNumber, mode);
       FileTable.addElement(entry);
@@ -132,7 +142,7 @@ public class FileTable {
     */
    public synchronized boolean ffree( FileTableEntry e ) {
       // receive a file table entry reference
-      Inode inode = new Inode(e.iNumber);
+      Inode inode = load(e.iNumber);
       // Check to see if entry is in the FileTable
       if(FileTable.remove(e))
       {
@@ -152,13 +162,73 @@ public class FileTable {
          }
          // Decrease count of users of entry file
          inode.count--;
-         // save the corresponding inode to the disk
-         inode.toDisk(e.iNumber);
+         // save the corresponding inode, and others of its block, to the disk
+         dirty.put(e.iNumber, inode);
+         write(Inode.blockOf(e.iNumber));
          // return true if this file table entry found in my table
          return true;
       }
       return false;
    }
+   // ---------------------------- markDirty ----------------------------
+   /**
+    * Records that inode, the i-th iNode, changed; it is written back on
+    * close, sync or by InodeFlusher instead of right away
+    */
+   public synchronized void markDirty( short iNumber, Inode inode ) {
+      dirty.put(iNumber, inode);
+   }
+
+   // ---------------------------- flushInodes ----------------------------
+   /**
+    * Writes every changed inode back, one pin per inode block
+    * @return # inode blocks written
+    */
+   public synchronized int flushInodes( ) {
+      return write(-1);
+   }
+
+   // ---------------------------- dropInodes ----------------------------
+   /**
+    * Forgets changed inodes without writing them, before a format
+    */
+   public synchronized void dropInodes( ) {
+      dirty.clear();
+   }
+
+   // the i-th iNode: its changed copy if not yet written, else from disk
+   private Inode load( short iNumber ) {
+      Inode inode = dirty.get(iNumber);
+      return (inode != null) ? inode : new Inode(iNumber);
+   }
+
+   // writes the changed inodes of inode block only, or of all if -1
+   private int write( int only ) {
+      int written = 0;
+      int pinned = -1;
+      ByteBuffer block = null;
+      Iterator<Map.Entry<Short, Inode>> it = dirty.entrySet().iterator();
+      while (it.hasNext()) {
+         Map.Entry<Short, Inode> e = it.next();
+         int blockNumber = Inode.blockOf(e.getKey());
+         if (only != -1 && blockNumber != only)
+            continue;
+         // neighbours in the map share the pin of their block
+         if (blockNumber != pinned) {
+            if (block != null)
+               SysLib.cunpin(pinned, block);
+            block = SysLib.cpin(blockNumber, true);
+            pinned = blockNumber;
+            written++;
+         }
+         e.getValue().toBlock(e.getKey(), block);
+         it.remove();
+      }
+      if (block != null)
+         SysLib.cunpin(pinned, block);
+      return written;
+   }
+
    // ---------------------------- fempty ----------------------------
    /**
     * @return FileTable.isEmpty()
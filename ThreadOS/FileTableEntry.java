@@ -12,6 +12,9 @@ public class FileTableEntry {          // Each table entry should have
     public final short iNumber;         //    this inode number
     public int count;                   //    # threads sharing this entry
     public final String mode;           //    "r", "w", "w+", or "a"
+    int nextBlock;                      // file block a sequential read wants next
+    int window;                         // # blocks read ahead, 0 if not sequential
+    int aheadUntil;                     // file blocks before this are read ahead
     public FileTableEntry ( Inode i, short inumber, String m ) {
        seekPtr = 0;             // the seek pointer is set to the file top
        inode = i;
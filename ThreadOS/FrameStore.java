@@ -0,0 +1,102 @@
+/** ========================================== FrameStore.java ==============================================
+ * SUMMARY
+ * Memory holding the data of every cache frame. On the heap each frame is
+ * its own byte array. Off the heap ("-cachemem offheap") all frames live
+ * in direct ByteBuffers of up to 1GB each, outside the garbage collected
+ * heap, so a cache of millions of frames adds no objects for the
+ * collector to trace. The frame metadata is kept by the segments in
+ * primitive arrays either way. Off-heap caches larger than the heap need
+ * the JVM started with a large enough -XX:MaxDirectMemorySize.
+ */
+
+import java.nio.ByteBuffer;
+
+public class FrameStore {
+    private final static int SLAB_BYTES = 1 << 30;   // largest direct buffer
+
+    private int blockSize;
+    private boolean offHeap;
+    private byte heap[][];          // data of each frame, on the heap
+    private ByteBuffer slabs[];     // framesPerSlab frames each, off the heap
+    private int framesPerSlab;
+
+    public FrameStore( int frames, int blockSize, boolean offHeap ) {
+        this.blockSize = blockSize;
+        this.offHeap = offHeap;
+        if ( !offHeap ) {
+            heap = new byte[frames][blockSize];
+            return;
+        }
+        framesPerSlab = Math.max( 1, SLAB_BYTES / blockSize );
+        slabs = new ByteBuffer[ ( frames + framesPerSlab - 1 ) / framesPerSlab ];
+        for ( int i = 0; i < slabs.length; i++ ) {
+            int count = Math.min( framesPerSlab, frames - i * framesPerSlab );
+            slabs[i] = ByteBuffer.allocateDirect( count * blockSize );
+        }
+    }
+
+    // "heap" or "offheap", for the cache statistics
+    public String name( ) {
+        return offHeap ? "offheap" : "heap";
+    }
+
+    // copies frame's data into buffer[offset ..]
+    public void get( int frame, byte buffer[], int offset ) {
+        get( frame, 0, buffer, offset, blockSize );
+    }
+
+    // overwrites frame's data from buffer[offset ..]
+    public void put( int frame, byte buffer[], int offset ) {
+        put( frame, 0, buffer, offset, blockSize );
+    }
+
+    // copies bytes from .. from + length - 1 of frame into buffer[offset ..]
+    public void get( int frame, int from, byte buffer[], int offset, int length ) {
+        if ( offHeap )
+            slabs[frame / framesPerSlab].get( ( frame % framesPerSlab ) * blockSize + from,
+                                              buffer, offset, length );
+        else
+            System.arraycopy( heap[frame], from, buffer, offset, length );
+    }
+
+    // overwrites bytes from .. from + length - 1 of frame from buffer[offset ..]
+    public void put( int frame, int from, byte buffer[], int offset, int length ) {
+        if ( offHeap )
+            slabs[frame / framesPerSlab].put( ( frame % framesPerSlab ) * blockSize + from,
+                                              buffer, offset, length );
+        else
+            System.arraycopy( buffer, offset, heap[frame], from, length );
+    }
+
+    // returns a view of frame's data, read-only unless writable; its
+    // position and limit are the caller's own
+    public ByteBuffer view( int frame, boolean writable ) {
+        ByteBuffer view = offHeap
+            ? slabs[frame / framesPerSlab].slice( ( frame % framesPerSlab ) * blockSize,
+                                                  blockSize )
+            : ByteBuffer.wrap( heap[frame] );
+        return writable ? view : view.asReadOnlyBuffer( );
+    }
+
+    // returns a copy of frame's data
+    public byte[] copy( int frame ) {
+        byte block[] = new byte[blockSize];
+        get( frame, block, 0 );
+        return block;
+    }
+
+    // reads blockId from disk into frame; a heap frame is read in place
+    public int read( int frame, int blockId ) {
+        if ( !offHeap )
+            return SysLib.rawread( blockId, heap[frame] );
+        byte block[] = new byte[blockSize];
+        int status = SysLib.rawread( blockId, block );
+        put( frame, block, 0 );
+        return status;
+    }
+
+    // writes frame's data to disk as blockId
+    public int write( int frame, int blockId ) {
+        return SysLib.rawwrite( blockId, offHeap ? copy( frame ) : heap[frame] );
+    }
+}
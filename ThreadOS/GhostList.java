@@ -0,0 +1,79 @@
+/** ========================================== GhostList.java ==============================================
+ * SUMMARY
+ * Block numbers of recently evicted blocks, kept without their data so a
+ * policy can tell a block it threw out too early from one it has never
+ * seen. Holds up to capacity blocks spread over a few lists, each in the
+ * order the blocks were added; a full history forgets the oldest block of
+ * the list being added to.
+ */
+
+public class GhostList {
+    private BlockIndex index;     // blockId -> slot
+    private SlotList lists;       // oldest block of each list first
+    private int blocks[];         // block held by each slot
+    private int free[];           // unused slots
+    private int freeCount;
+    private int listCount;
+
+    public GhostList( int capacity, int lists ) {
+        capacity = Math.max( 1, capacity );
+        index = new BlockIndex( capacity );
+        this.lists = new SlotList( capacity, lists );
+        listCount = lists;
+        blocks = new int[capacity];
+        free = new int[capacity];
+        for ( int i = 0; i < capacity; i++ )
+            free[i] = i;
+        freeCount = capacity;
+    }
+
+    // list holding blockId, or SlotList.NONE if it is not remembered
+    public int listOf( int blockId ) {
+        int slot = index.get( blockId );
+        return ( slot == BlockIndex.MISSING ) ? SlotList.NONE
+            : lists.listOf( slot );
+    }
+
+    public int size( int list ) {
+        return lists.size( list );
+    }
+
+    // remembers blockId as the newest block of list
+    public void add( int list, int blockId ) {
+        remove( blockId );
+        if ( freeCount == 0 )
+            removeOldest( lists.size( list ) > 0 ? list : fullest( ) );
+        int slot = free[--freeCount];
+        blocks[slot] = blockId;
+        index.put( blockId, slot );
+        lists.addLast( list, slot );
+    }
+
+    public void remove( int blockId ) {
+        int slot = index.get( blockId );
+        if ( slot == BlockIndex.MISSING )
+            return;
+        index.remove( blockId );
+        lists.remove( slot );
+        free[freeCount++] = slot;
+    }
+
+    // forgets the oldest block of list; returns it, or -1 if list is empty
+    public int removeOldest( int list ) {
+        int slot = lists.first( list );
+        if ( slot == SlotList.NONE )
+            return -1;
+        int blockId = blocks[slot];
+        remove( blockId );
+        return blockId;
+    }
+
+    private int fullest( ) {
+        int list = 0;
+        for ( int i = 1; i < listCount; i++ ) {
+            if ( lists.size( i ) > lists.size( list ) )
+                list = i;
+        }
+        return list;
+    }
+}
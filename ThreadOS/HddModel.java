@@ -0,0 +1,26 @@
+/** ========================================== HddModel.java ==============================================
+ * SUMMARY
+ * Spinning disk: half a rotation of rotational delay on average, a track
+ * to track seek proportional to the distance the head travels, and a
+ * transfer time for the first block plus a short one for each further
+ * block of a run. A single arm serves one request at a time.
+ */
+
+public class HddModel implements DiskModel {
+    private final int trackSize = 10;                // blocks per track
+    private final long rotationalDelay = 10000;      // half a rotation
+    private final long transferTime = 10000;         // first block
+    private final long transferPerBlock = 1000;      // each extra block of a run
+    private final long delayPerTrack = 1000;         // head movement
+
+    public long serviceTime( int headBlockId, int blockId, int count ) {
+        return rotationalDelay + transferTime
+            + delayPerTrack * Math.abs( blockId / trackSize
+                                        - headBlockId / trackSize )
+            + transferPerBlock * ( count - 1 );
+    }
+
+    public int parallelism( ) {
+        return 1;
+    }
+}
@@ -7,17 +7,68 @@
  * Keeps track of which blocks are in the file (and their order)
  * Can Map an offest to a specific block
  * Direct Access to the disk itself
+ * Reads and patches inode and indirect blocks in place through pinned
+ * cache views, instead of copying whole blocks in and out
  */
 
+import java.nio.ByteBuffer;
+
 public class Inode {
-   private final static int iNodeSize = 32;       // fix to 32 bytes
+   private static int iNodeSize = 32;             // 32 bytes, 64 with wide pointers
+   private static int pointerSize = 2;            // bytes per block pointer on disk
    public final static int directSize = 11;      // # direct pointers
 
    public int length;                             // file size in bytes
    public short count;                            // # file-table entries pointing to this
    public short flag;                             // 0 = unused, 1 = used, ...
-   public short direct[] = new short[directSize]; // direct pointers
-   public short indirect;                         // a indirect pointer
+   public int direct[] = new int[directSize];     // direct pointers
+   public int indirect;                           // a indirect pointer
+
+    // ---------------------------- setVolumeSize ----------------------------
+   /**
+    * Picks the on-disk pointer width for a volume of totalBlocks
+    * Volumes that fit in a short keep the original 32-byte inode,
+    * larger ones store 4-byte pointers in a 64-byte inode
+    * @param totalBlocks
+    */
+   static void setVolumeSize( int totalBlocks ) {
+      pointerSize = (totalBlocks > Short.MAX_VALUE) ? 4 : 2;
+      iNodeSize = (pointerSize == 2) ? 32 : 64;
+   }
+
+   // # inodes stored in one disk block
+   static int inodesPerBlock( ) {
+      return Disk.blockSize / iNodeSize;
+   }
+
+   // # block pointers stored in an indirect block
+   static int pointersPerBlock( ) {
+      return Disk.blockSize / pointerSize;
+   }
+
+   // reads the index-th block pointer of an indirect block
+   static int getPointer( byte[] data, int index ) {
+      return (pointerSize == 2) ? SysLib.bytes2short(data, index * 2)
+                                : SysLib.bytes2int(data, index * 4);
+   }
+
+   // writes the index-th block pointer of an indirect block
+   static void setPointer( int pointer, byte[] data, int index ) {
+      setPointer( pointer, ByteBuffer.wrap( data ), index );
+   }
+
+   // the same, on a pinned view of the block
+   static int getPointer( ByteBuffer data, int index ) {
+      return (pointerSize == 2) ? data.getShort(index * 2)
+                                : data.getInt(index * 4);
+   }
+
+   static void setPointer( int pointer, ByteBuffer data, int index ) {
+      if (pointerSize == 2)
+         data.putShort(index * 2, (short) pointer);
+      else
+         data.putInt(index * 4, pointer);
+   }
 
     // ---------------------------- Constuctors ----------------------------
    /**
@@ -37,7 +88,8 @@ public class Inode {
     *! Retrieve from Disk
     * Takes in iNumber and creates an iNode 
             by retrieving info from disk
-    * iNode = 32 bytes (entire block)
+    * iNode = 32 bytes (entire block), pointers are 4 bytes wide
+    *         in the 64-byte inode of a large volume
     * start = (0-16) * 32     ex. start = 0
     * length = Block[0-3],        start = 0
     * count = Block[4-5],         start = 4
@@ -48,79 +100,73 @@ public class Inode {
     */
    Inode( short iNumber ) {         
       // read in disk where Inode is
-      int blockNum = 1 + (iNumber / 16);
-      // retrieve data
-      byte[] diskBlock = new byte[Disk.blockSize];
-      SysLib.rawread(blockNum, diskBlock);
+      int blockNum = 1 + (iNumber / inodesPerBlock());
+      // view the cached block instead of copying it
+      ByteBuffer diskBlock = SysLib.cpin(blockNum, false);
 
       // read Inodes 32 bytes within disk block
-      int start = (iNumber % 16) * iNodeSize;
+      int start = (iNumber % inodesPerBlock()) * iNodeSize;
       // Assign file size & increment
-      length = SysLib.bytes2int(diskBlock, start);
+      length = diskBlock.getInt(start);
       start += 4;
       // Assign file-table entries & increment by 4
-      count = SysLib.bytes2short(diskBlock, start);
+      count = diskBlock.getShort(start);
       start += 2;
       // Assign flag & increment by 2
-      flag = SysLib.bytes2short(diskBlock, start);
+      flag = diskBlock.getShort(start);
       start += 2;
 
       // set (11) direct pointers & increment each iteration by 2
       for(int i = 0; i < directSize; i ++) {
-         direct[i] = SysLib.bytes2short(diskBlock, start);
-         start += 2;
+         direct[i] = getPointer(diskBlock, start / pointerSize);
+         start += pointerSize;
       }
       
       // set (1) indirect pointer at Disk[30]
-      indirect = SysLib.bytes2short(diskBlock, start);
+      indirect = getPointer(diskBlock, start / pointerSize);
+      SysLib.cunpin(blockNum, diskBlock);
+   }
 
+   // inode block holding the i-th iNode
+   static int blockOf( short iNumber ) {
+      return 1 + iNumber / inodesPerBlock();
    }
-    // ---------------------------- toDisk ----------------------------
+
+   // encodes this iNode into its slot of block, a pinned view of the
+   // inode block holding the i-th iNode
+   void toBlock( short iNumber, ByteBuffer block ) {
+      toBytes(block, (iNumber % inodesPerBlock()) * iNodeSize);
+   }
+
+    // ---------------------------- toBytes ----------------------------
    /**
-    *! Write to Disk 
-    * Saves iNode to Disk
-    * Writes to Disk as the i-th iNode
-    * @param iNumber
+    * Encodes this iNode into its slot of an inode block
+    * @param data inode block
+    * @param offset start of the slot
     */
-   int toDisk( short iNumber ) 
-   {       
-        if(iNumber < 0) return -1;
-
-        int blockSize = 16;
-        byte [] data = new byte[iNodeSize];
-        int offset = 0;
+   void toBytes( byte[] data, int offset )
+   {
+        toBytes(ByteBuffer.wrap(data), offset);
+   }
 
+   void toBytes( ByteBuffer data, int offset )
+   {
         // Assign flags to byte[]
-        SysLib.int2bytes(length, data, offset);
+        data.putInt(offset, length);
         offset += 4;
-        SysLib.short2bytes(count, data, offset);
+        data.putShort(offset, count);
         offset += 2;
-        SysLib.short2bytes(flag, data, offset);
+        data.putShort(offset, flag);
         offset += 2;
 
         // convert data from direct to bytes
         for (int i = 0; i < directSize; i++){
-            SysLib.short2bytes(direct[i], data, offset);
-            offset += 2;
+            setPointer(direct[i], data, offset / pointerSize);
+            offset += pointerSize;
         }
 
         // convert data from indirect to bytes
-        SysLib.short2bytes(indirect, data, offset);
-        offset += 2;
-
-        // Read current data at blockNumber
-        int blockNumber = 1 + iNumber / blockSize;
-        byte[] newData = new byte[Disk.blockSize];
-        SysLib.rawread(blockNumber,newData);
-
-        // Reassign offset
-        offset = (iNumber % blockSize) * iNodeSize;
-
-        // Copy over data to newData from offset to max
-        System.arraycopy(data, 0, newData, offset, iNodeSize);
-        SysLib.rawwrite(blockNumber,newData);
-
-        return 0;
+        setPointer(indirect, data, offset / pointerSize);
    }
 
     // ---------------------------- fetchTarget ----------------------------
@@ -138,13 +184,15 @@ public class Inode {
       // indirect is not null & trying to be accessed
       else if(indirect != -1)
       {
-         byte[] data = new byte[Disk.blockSize];
-         // Get number of blocks indirect points to
-         SysLib.rawread(indirect, data);
          // Size of indirect
          int diff = start - directSize;
-         // int to byte
-         blockIndex = SysLib.bytes2short(data, diff * 2);
+         // Look the pointer up in the cached indirect block
+         if (diff < pointersPerBlock())
+         {
+            ByteBuffer data = SysLib.cpin(indirect, false);
+            blockIndex = getPointer(data, diff);
+            SysLib.cunpin(indirect, data);
+         }
       }
       // if seek < 0 || indirect == -1 returns error (-1)
       return blockIndex;
@@ -156,7 +204,7 @@ public class Inode {
     * @param freeBlock
     * @return successful/fail
     */
-   boolean addBlock( short freeBlock ) {
+   boolean addBlock( int freeBlock ) {
       int id = (length / Disk.blockSize) + 1;
       // Add to direct
       if(id < directSize) 
@@ -169,21 +217,22 @@ public class Inode {
       {
          byte[] data = freeIndirect();
          int offset = 0;
-         short blockID = SysLib.bytes2short(data, offset);
+         int blockID = getPointer(data, offset);
          // Continues to look for empty indirect block
          while(blockID != -1)
          {
+            // Increment through indirect block
+            offset++;
+
             // Indirect block is full
-            if(offset >= Disk.blockSize)
+            if(offset >= pointersPerBlock())
                return false;
             
-            // Increment through indirect block
-            offset += 2;
-            blockID = SysLib.bytes2short(data, offset);
+            blockID = getPointer(data, offset);
          }
          // Assign indirect block with indirectData + free block
-         SysLib.short2bytes(freeBlock, data, offset);
-         SysLib.rawwrite(indirect, data);
+         setPointer(freeBlock, data, offset);
+         SysLib.cwrite(indirect, data);
       }
       return true;
    }
@@ -195,7 +244,7 @@ public class Inode {
      * @param blockNumber
      * @return success/fail
      */
-    boolean setIndexBlock(short blockNumber){
+    boolean setIndexBlock(int blockNumber){
       // Check if direct has any null values
       for (int i = 0; i < directSize; i++) 
           if (direct[i] == -1)
@@ -209,10 +258,10 @@ public class Inode {
       indirect = blockNumber;
       byte[ ] data = new byte[Disk.blockSize];
 
-      for(int i = 0; i < (Disk.blockSize / 2); i++){
-          SysLib.short2bytes((short) -1, data, i * 2);
+      for(int i = 0; i < pointersPerBlock(); i++){
+          setPointer(-1, data, i);
       }
-      SysLib.rawwrite(blockNumber, data);
+      SysLib.cwrite(blockNumber, data);
 
       return true;
 
@@ -228,7 +277,7 @@ public class Inode {
      *        -2 = error on write to unused block,
      *        -3 = error on write to null ptr
      */
-    int getFreeBlockIndex(int entry, short offset){
+    int getFreeBlockIndex(int entry, int offset){
       int target = entry / Disk.blockSize;
     
       if (target < directSize)
@@ -252,21 +301,20 @@ public class Inode {
       // Otherwise, look through indirect
       else
       {
-          // Read current data
-          byte[] data = new byte[ Disk.blockSize ];
-          SysLib.rawread(indirect,data);
-
           // Check for values > 0 in indirect
-          int blockSpace = (target - directSize) * 2;
-          if ( SysLib.bytes2short(data, blockSpace) > 0){
+          int blockSpace = target - directSize;
+          if ( blockSpace >= pointersPerBlock() )
+              return -1;
+
+          // Patch the cached indirect block in place
+          ByteBuffer data = SysLib.cpin(indirect, true);
+          if ( getPointer(data, blockSpace) > 0 ){
+              SysLib.cunpin(indirect, data);
               return -1;
           }
           // Otherwise, free block
-          else
-          {
-              SysLib.short2bytes(offset, data, blockSpace);
-              SysLib.rawwrite(indirect, data);
-          }
+          setPointer(offset, data, blockSpace);
+          SysLib.cunpin(indirect, data);
       }
       return 0;
   }
@@ -281,7 +329,7 @@ public class Inode {
       if(indirect == -1) return null;
       // read and set to -1
       byte[] data = new byte[Disk.blockSize];
-      SysLib.rawread(indirect, data);
+      SysLib.cread(indirect, data);
       indirect = -1;
       return data;
    }
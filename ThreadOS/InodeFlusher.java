@@ -0,0 +1,37 @@
+// ------------------------------ InodeFlusher.java ----------------------------
+/**
+ * PURPOSE OF FILE
+ * Kernel thread that writes back inodes changed only in memory. Writes
+ * to a file just mark its inode changed, so many writes cost one inode
+ * update; every interval the changed inodes go into their cached inode
+ * blocks, several inodes of one block under a single pin, and the cache
+ * writes those blocks back with the rest. Close and sync also write them.
+ * Runs every "-dirtyage ms", like CacheFlusher.
+ */
+
+public class InodeFlusher extends Thread {
+	private FileSystem fs;
+	private long interval;							// ms between passes
+
+    // -------------------------------------------------------------------------
+    //! public Constructor
+    /**
+     * @param fs whose inodes to write back
+     * @param interval ms between passes
+     */
+	public InodeFlusher(FileSystem fs, long interval){
+		this.fs = fs;
+		this.interval = Math.max(1, interval);
+	}
+
+	public void run(){
+		while(true){
+			try {
+				sleep(interval);
+			} catch (InterruptedException e) {
+				SysLib.cerr(e.toString() + "\n");
+			}
+			fs.flushInodes();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 import java.util.*;
 import java.lang.reflect.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /** ========================================== Kernel.java ==============================================
  * @author Connor Riley Shabro
@@ -49,6 +50,43 @@ public class Kernel
    public final static int FORMAT  = 18; // SysLib.format( int files )
    public final static int DELETE  = 19; // SysLib.delete( String fileName )
 
+   // Vectored disk I/O: b.length / blockSize consecutive blocks at once
+   public final static int RAWREADV  = 20; // SysLib.rawreadv(int blk, byte b[])
+   public final static int RAWWRITEV = 21; // SysLib.rawwritev(int blk, byte b[])
+
+   // Asynchronous disk I/O: submit a DiskRequest, then poll or wait on it
+   public final static int RAWSUBMIT = 22; // SysLib.rawsubmit(DiskRequest r)
+   public final static int RAWWAIT   = 23; // SysLib.rawwait(DiskRequest r)
+
+   // Disk I/O statistics
+   public final static int DSTAT     = 24; // SysLib.dstat(StringBuffer s)
+
+   // Vectored cached I/O, coherent with blocks held in the cache
+   public final static int CREADV    = 25; // SysLib.creadv(int blk, byte b[])
+   public final static int CWRITEV   = 26; // SysLib.cwritev(int blk, byte b[])
+
+   // Read-ahead: start loading blocks into the cache without waiting
+   public final static int CPREFETCH = 27; // SysLib.cprefetch(int blk, int count)
+
+   // Pinned cache blocks: a view of the frame instead of a copy
+   public final static int CPIN      = 28; // SysLib.cpin(int blk, boolean write)
+   public final static int CPINW     = 29;
+   public final static int CUNPIN    = 30; // SysLib.cunpin(int blk, ByteBuffer v)
+
+   // Most referenced cached blocks, kept across reboots to warm the cache
+   public final static int CHOT      = 31; // SysLib.chot(int blocks[])
+
+   // Resize the cache while running
+   public final static int CRESIZE   = 32; // SysLib.cresize(int frames)
+
+   // Byte ranges of one cached block
+   public final static int CREADAT   = 33; // SysLib.cread(int blk, int from,
+   public final static int CWRITEAT  = 34; //    byte b[], int offset, int length)
+
+   // File I/O at an offset, leaving the seek pointer alone
+   public final static int PREAD     = 35; // SysLib.pread(int fd, byte b[], int offset)
+   public final static int PWRITE    = 36; // SysLib.pwrite(int fd, byte b[], int offset)
+
    // Predefined file descriptors
    public final static int STDIN  = 0;
    public final static int STDOUT = 1;
@@ -58,21 +96,25 @@ public class Kernel
    public final static int OK = 0;
    public final static int ERROR = -1;
 
+   // Default disk geometry, overridden by "-blocks n" and "-blocksize n"
+   private final static int DEFAULT_BLOCKS     = 1000;
+   private final static int DEFAULT_BLOCK_SIZE = 512;
+   private final static int DEFAULT_STRIPE     = 4;   // "-stripe n" blocks
+   private final static int DEFAULT_CACHE_BLOCKS = 10; // "-cache n" frames
+   private final static int DEFAULT_DIRTY_RATIO = 10;  // "-dirty percent"
+   private final static int DEFAULT_DIRTY_AGE = 1000;  // "-dirtyage ms"
+
    // System thread references
    private static Scheduler scheduler;
-   private static Disk disk;
+   private static BlockDevice disk;
    private static Cache cache;
 
    // Synchronized Queues
    private static SyncQueue waitQueue;  // for threads to wait for their child
-   private static SyncQueue ioQueue;    // I/O queue
 
    // File System
    private static FileSystem fs;
 
-   private final static int COND_DISK_REQ = 1; // wait condition 
-   private final static int COND_DISK_FIN = 2; // wait condition
-
    // Standard input
    private static BufferedReader input
       = new BufferedReader( new InputStreamReader( System.in ) );
@@ -89,18 +131,46 @@ public class Kernel
                   scheduler.start( );
 
                   // instantiate and start a disk
-                  disk = new Disk( 1000 );
+                  String[] bootArgs = ( String[] )args;
+                  int blocks = bootNumber( bootArgs, "blocks", DEFAULT_BLOCKS );
+                  try {
+                     disk = bootDisk( bootArgs, blocks );
+                  } catch ( IllegalStateException e ) {
+                     // no usable backing store: nothing can run
+                     SysLib.cerr( "threadOS: " + e.getMessage( ) + "\n" );
+                     return ERROR;
+                  }
                   disk.start( );
 
                   // instantiate a cache memory
-                  cache = new Cache( disk.blockSize, 10 );
+                  int frames = bootNumber( bootArgs, "cache", DEFAULT_CACHE_BLOCKS );
+                  // "-cachemem offheap" keeps the frames outside the heap;
+                  // "-cachebudget MB" sizes the cache to its load within MB
+                  long budget = ( long )bootNumber( bootArgs, "cachebudget", 0 )
+                     * 1024 * 1024 / Disk.blockSize;
+                  int maxFrames = ( int )Math.min( Integer.MAX_VALUE, budget );
+                  if ( budget > 0 )
+                     frames = Math.min( frames, maxFrames );
+                  cache = new Cache( Disk.blockSize, frames,
+                                     bootOption( bootArgs, "policy", "esca" ),
+                                     bootOption( bootArgs, "cachemem", "heap" )
+                                        .equals( "offheap" ),
+                                     budget > 0 );
+                  if ( budget > 0 )
+                     new CacheSizer( cache, Math.min( frames, DEFAULT_CACHE_BLOCKS ),
+                                     maxFrames ).start( );
+                  int dirtyAge = bootNumber( bootArgs, "dirtyage", DEFAULT_DIRTY_AGE );
+                  new CacheFlusher( cache,
+                                    bootNumber( bootArgs, "dirty", DEFAULT_DIRTY_RATIO ),
+                                    dirtyAge ).start( );
 
                   // instantiate synchronized queues
-                  ioQueue = new SyncQueue( );
                   waitQueue = new SyncQueue( scheduler.getMaxThreads( ) );
 
                   // instantiate a file system;
-                  fs = new FileSystem( 1000 );
+                  fs = new FileSystem( blocks );
+                  // inodes changed in memory are written back as often
+                  new InodeFlusher( fs, dirtyAge ).start( );
 
                   return OK;
                case EXEC:
@@ -129,23 +199,30 @@ public class Kernel
                   scheduler.sleepThread( param ); // param = milliseconds
                   return OK;
                case RAWREAD: // read a block of data from disk
-                  while ( disk.read( param, ( byte[] )args ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_REQ );
-                  while ( disk.testAndResetReady( ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_FIN );
-                  return OK;
+                  return rawIO( DiskRequest.READ, param, 1, ( byte[] )args );
                case RAWWRITE: // write a block of data to disk
-                  while ( disk.write( param, ( byte[] )args ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_REQ );
-                  while ( disk.testAndResetReady( ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_FIN );
+                  return rawIO( DiskRequest.WRITE, param, 1, ( byte[] )args );
+               case RAWREADV: // read a run of consecutive blocks in one seek
+                  return rawIO( DiskRequest.READ, param,
+                                ( ( byte[] )args ).length / Disk.blockSize,
+                                ( byte[] )args );
+               case RAWWRITEV: // write a run of consecutive blocks in one seek
+                  return rawIO( DiskRequest.WRITE, param,
+                                ( ( byte[] )args ).length / Disk.blockSize,
+                                ( byte[] )args );
+               case RAWSUBMIT: // queue a request and return without waiting
+                  return ( disk.submit( ( DiskRequest )args ) == null ) ?
+                     ERROR : OK;
+               case RAWWAIT:  // wait for a submitted request to complete
+                  ( ( DiskRequest )args ).await( );
+                  return OK;
+               case DSTAT:    // append cache and per-disk statistics to args
+                  cache.report( ( StringBuffer )args );
+                  disk.report( ( StringBuffer )args );
                   return OK;
                case SYNC:     // synchronize disk data to a real file
                   fs.sync( );
-                  while ( disk.sync( ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_REQ );
-                  while ( disk.testAndResetReady( ) == false )
-                     ioQueue.enqueueAndSleep( COND_DISK_FIN );
+                  cache.sync( );
                   return OK;
                case READ:
                   switch ( param ) {
@@ -200,6 +277,45 @@ public class Kernel
                   return cache.read( param, ( byte[] )args ) ? OK : ERROR;
                case CWRITE:  // to be implemented in assignment 4
                   return cache.write( param, ( byte[] )args ) ? OK : ERROR;
+               case CREADV:  // run of blocks, cached copies take precedence
+                  return cache.readv( param, ( byte[] )args ) ? OK : ERROR;
+               case CWRITEV: // run of blocks, written through the cache
+                  return cache.writev( param, ( byte[] )args ) ? OK : ERROR;
+               case CPREFETCH: // args.length blocks from param on, asynchronously
+                  cache.prefetch( param, ( ( BlockRange )args ).length );
+                  return OK;
+               case CPIN:    // args[0] receives a read-only view of block param
+               case CPINW:   // or a writable one
+                  ByteBuffer[] view = ( ByteBuffer[] )args;
+                  view[0] = cache.pin( param, cmd == CPINW );
+                  return ( view[0] != null ) ? OK : ERROR;
+               case CUNPIN:  // args is the view cpin returned for block param
+                  if ( args == null )
+                     return ERROR;
+                  return cache.unpin( param, ( ByteBuffer )args ) ? OK : ERROR;
+               case CHOT:    // fills args with block numbers, returns how many
+                  return cache.hottest( ( int[] )args );
+               case CRESIZE: // param frames, dirty ones written back first
+                  return cache.resize( param ) ? OK : ERROR;
+               case CREADAT: // part of block param, as args says
+                  BlockRange range = ( BlockRange )args;
+                  return cache.read( param, range.from, range.buffer,
+                                     range.offset, range.length ) ? OK : ERROR;
+               case CWRITEAT: // part of block param, rest read only if needed
+                  range = ( BlockRange )args;
+                  return cache.write( param, range.from, range.buffer,
+                                      range.offset, range.length ) ? OK : ERROR;
+               case PREAD:   // fd param, args.buffer from file offset args.from
+               case PWRITE:
+                  if ( ( myTcb = scheduler.getMyTcb( ) ) != null ) {
+                     FileTableEntry ftEnt = myTcb.getFtEnt( param );
+                     range = ( BlockRange )args;
+                     if ( ftEnt != null )
+                        return ( cmd == PREAD )
+                           ? fs.pread( ftEnt, range.buffer, range.from )
+                           : fs.pwrite( ftEnt, range.buffer, range.from );
+                  }
+                  return ERROR;
                case CSYNC:   // to be implemented in assignment 4
                   cache.sync( );
                   return OK;
@@ -244,12 +360,8 @@ public class Kernel
             }
             return ERROR;
          case INTERRUPT_DISK: // Disk interrupts
-            // wake up the thread waiting for a service completion
-            ioQueue.dequeueAndWakeup( COND_DISK_FIN );
-
-            // wake up the thread waiting for a request acceptance
-            ioQueue.dequeueAndWakeup( COND_DISK_REQ );
-
+            // nothing to do: the disk completes each DiskRequest itself,
+            // waking only the thread waiting on that request
             return OK;
          case INTERRUPT_IO:   // other I/O interrupts (not implemented)
             return OK;
@@ -257,6 +369,73 @@ public class Kernel
       return OK;
    }
 
+   // Submits a raw disk command and sleeps until the device completes it
+   private static int rawIO( int command, int blk, int count, byte b[] ) {
+      DiskRequest request
+         = disk.submit( new DiskRequest( command, blk, count, b ) );
+      if ( request == null )
+         return ERROR;
+      request.await( );
+      return OK;
+   }
+
+   // Builds the block device described by the boot arguments: one Disk
+   // on the file DISK, or with "-raid0 n" n Disks on DISK0 .. DISKn-1
+   // striped "-stripe s" blocks at a time, or with "-raid1 n" n mirrored
+   // Disks on MIRROR0 .. MIRRORn-1. Each Disk keeps its image in
+   // memory or, with "-disk mapped", maps it, and is timed by
+   // "-device ram|ssd|hdd".
+   private static BlockDevice bootDisk( String bootArgs[], int blocks ) {
+      int blockSize = bootNumber( bootArgs, "blocksize", DEFAULT_BLOCK_SIZE );
+      boolean mapped = bootOption( bootArgs, "disk", "memory" ).equals( "mapped" );
+      String device = bootOption( bootArgs, "device", "hdd" );
+
+      int mirrors = bootNumber( bootArgs, "raid1", 1 );
+      if ( mirrors > 1 ) {
+         Disk[] disks = new Disk[mirrors];
+         for ( int i = 0; i < mirrors; i++ )
+            disks[i] = new Disk( "MIRROR" + i, blocks, blockSize, mapped,
+                                 DiskModel.forName( device ) );
+         return new MirroredDisk( disks, blocks );
+      }
+
+      int members = bootNumber( bootArgs, "raid0", 1 );
+      if ( members == 1 )
+         return new Disk( "DISK", blocks, blockSize, mapped,
+                          DiskModel.forName( device ) );
+
+      int stripe = bootNumber( bootArgs, "stripe", DEFAULT_STRIPE );
+      int memberBlocks = StripedDisk.memberBlocks( blocks, members, stripe );
+      Disk[] disks = new Disk[members];
+      for ( int i = 0; i < members; i++ )
+         disks[i] = new Disk( "DISK" + i, memberBlocks, blockSize, mapped,
+                              DiskModel.forName( device ) );
+      return new StripedDisk( disks, stripe, blocks );
+   }
+
+   // Returns the value given as "-name value" in the boot arguments,
+   // or def if the option is absent
+   private static String bootOption( String args[], String name, String def ) {
+      if ( args == null )
+         return def;
+      for ( int i = 0; i + 1 < args.length; i++ )
+         if ( args[i].equals( "-" + name ) )
+            return args[i + 1];
+      return def;
+   }
+
+   // Returns the positive number given as "-name n" in the boot arguments,
+   // or def if the option is absent or malformed
+   private static int bootNumber( String args[], String name, int def ) {
+      try {
+         int n = Integer.parseInt( bootOption( args, name, "" + def ) );
+         return ( n > 0 ) ? n : def;
+      } catch ( NumberFormatException e ) {
+         System.out.println( "threadOS: bad -" + name + ", using " + def );
+         return def;
+      }
+   }
+
    // Spawning a new thread
    private static int sysExec( String args[] ) {
       String thrName = args[0]; // args[0] has a thread name
@@ -15,6 +15,7 @@ public class Loader extends Thread
 	SysLib.cout( "?:       print a help message\n" );
 	SysLib.cout( "q:       exit from threadOS\n" );
 	SysLib.cout( "l prog:  load prog\n" );
+	SysLib.cout( "s:       print cache and disk statistics\n" );
     }
 
     public void run( ) {
@@ -47,6 +48,11 @@ public class Loader extends Thread
 		}
 		SysLib.join( );
 		break;
+	    case 's':
+		StringBuffer stats = new StringBuffer( );
+		SysLib.dstat( stats );
+		SysLib.cout( stats.toString( ) );
+		break;
 	    case 'r':
 		break;
 	    }
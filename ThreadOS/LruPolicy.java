@@ -0,0 +1,42 @@
+/** ========================================== LruPolicy.java ==============================================
+ * SUMMARY
+ * Least recently used: every hit moves the frame to the back of one list
+ * and the victim is the frame at the front.
+ */
+
+public class LruPolicy implements CachePolicy {
+    private SlotList order;   // least recently used first
+
+    public LruPolicy( int frames ) {
+        order = new SlotList( frames, 1 );
+    }
+
+    public String name( ) {
+        return "lru";
+    }
+
+    public int victim( int blockId, Frames candidates ) {
+        int frame = order.first( 0 );
+        while ( frame != NONE && !candidates.evictable( frame ) )
+            frame = order.next( frame );
+        if ( frame != NONE )
+            order.remove( frame );
+        return frame;
+    }
+
+    public void inserted( int frame, int blockId ) {
+        order.addLast( 0, frame );
+    }
+
+    public void referenced( int frame ) {
+        order.addLast( 0, frame );
+    }
+
+    public void dirtied( int frame ) { }
+
+    public void cleaned( int frame ) { }
+
+    public void removed( int frame ) {
+        order.remove( frame );
+    }
+}
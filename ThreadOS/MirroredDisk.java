@@ -0,0 +1,105 @@
+/** ========================================== MirroredDisk.java ==============================================
+ * SUMMARY
+ * RAID-1: every member Disk holds a full copy of the volume in its own
+ * backing file. Writes and syncs go to all members; each read goes to the
+ * member whose head is fewest tracks away from the block (the distance
+ * Disk.seek( ) charges for), falling back to the shorter queue on a tie.
+ * A member whose file is missing at boot is rebuilt from a surviving one.
+ */
+
+public class MirroredDisk implements BlockDevice {
+    private final int rebuildBytes = 1 << 20;   // largest run copied at once
+
+    private Disk members[];
+    private int totalBlocks;
+
+    public MirroredDisk( Disk members[], int totalBlocks ) {
+        this.members = members;
+        this.totalBlocks = totalBlocks;
+    }
+
+    public void start( ) {
+        for ( int i = 0; i < members.length; i++ )
+            members[i].start( );
+        rebuild( );
+    }
+
+    public void report( StringBuffer out ) {
+        for ( int i = 0; i < members.length; i++ )
+            members[i].report( out );
+    }
+
+    public DiskRequest submit( DiskRequest request ) {
+        if ( request.command != DiskRequest.SYNC
+             && ( request.blockId < 0 || request.count < 1
+                  || request.blockId + request.count > totalBlocks
+                  || request.buffer.length < request.count * Disk.blockSize ) ) {
+            SysLib.cerr( "threadOS: a wrong blockId for "
+                         + ( request.command == DiskRequest.READ ?
+                             "read\n" : "write\n" ) );
+            return null;
+        }
+
+        if ( request.command == DiskRequest.READ ) {
+            request.split( 1 );
+            members[ closest( request.blockId ) ]
+                .submit( piece( request ) );
+            return request;
+        }
+
+        // every copy is written from the caller's buffer
+        request.split( members.length );
+        for ( int i = 0; i < members.length; i++ )
+            members[i].submit( piece( request ) );
+        return request;
+    }
+
+    private DiskRequest piece( DiskRequest request ) {
+        return new DiskRequest( request.command, request.blockId,
+                                request.count, request.buffer, request );
+    }
+
+    // member with the shortest seek to blockId
+    private int closest( int blockId ) {
+        int best = 0;
+        for ( int i = 1; i < members.length; i++ ) {
+            int distance = members[i].distanceTo( blockId );
+            int bestDistance = members[best].distanceTo( blockId );
+            if ( distance < bestDistance
+                 || ( distance == bestDistance
+                      && members[i].pending( ) < members[best].pending( ) ) )
+                best = i;
+        }
+        return best;
+    }
+
+    // copies a surviving member onto every member that started out empty
+    private void rebuild( ) {
+        int source = -1;
+        for ( int i = 0; i < members.length; i++ )
+            if ( !members[i].isNew( ) )
+                source = i;
+        if ( source == -1 )
+            return;     // a brand new volume: nothing to copy
+
+        int runBlocks = Math.max( 1, rebuildBytes / Disk.blockSize );
+        for ( int i = 0; i < members.length; i++ ) {
+            if ( !members[i].isNew( ) )
+                continue;
+            SysLib.cerr( "threadOS: rebuilding " + members[i].getPath( )
+                         + " from " + members[source].getPath( ) + "\n" );
+            for ( int blk = 0; blk < totalBlocks; blk += runBlocks ) {
+                int count = Math.min( runBlocks, totalBlocks - blk );
+                byte data[] = new byte[ count * Disk.blockSize ];
+                members[source].submit( new DiskRequest( DiskRequest.READ,
+                                                         blk, count, data ) )
+                    .await( );
+                members[i].submit( new DiskRequest( DiskRequest.WRITE,
+                                                    blk, count, data ) )
+                    .await( );
+            }
+            members[i].submit( new DiskRequest( DiskRequest.SYNC, 0, 0,
+                                                null ) ).await( );
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/** ========================================== RamModel.java ==============================================
+ * SUMMARY
+ * RAM disk: no simulated latency at all, so only the file system's own
+ * CPU time is measured.
+ */
+
+public class RamModel implements DiskModel {
+
+    public long serviceTime( int headBlockId, int blockId, int count ) {
+        return 0;
+    }
+
+    public int parallelism( ) {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,83 @@
+/** ========================================== SlotList.java ==============================================
+ * SUMMARY
+ * Doubly linked lists threaded through int arrays: each slot 0 .. n-1
+ * (a cache frame, or a remembered block) sits on at most one of a fixed
+ * number of lists, and can be moved, unlinked or appended in constant time
+ * without allocating a node. The replacement policies keep their LRU and
+ * FIFO orders here.
+ */
+
+public class SlotList {
+    public final static int NONE = -1;
+
+    private int next[], prev[];   // neighbours of each slot, NONE at ends
+    private int owner[];          // list each slot is on, NONE if none
+    private int head[], tail[], size[];
+
+    public SlotList( int slots, int lists ) {
+        next = new int[slots];
+        prev = new int[slots];
+        owner = new int[slots];
+        head = new int[lists];
+        tail = new int[lists];
+        size = new int[lists];
+        java.util.Arrays.fill( owner, NONE );
+        java.util.Arrays.fill( head, NONE );
+        java.util.Arrays.fill( tail, NONE );
+    }
+
+    public int first( int list ) { return head[list]; }
+    public int last( int list )  { return tail[list]; }
+    public int size( int list )  { return size[list]; }
+    public int next( int slot )  { return next[slot]; }
+    public int listOf( int slot ) { return owner[slot]; }
+
+    // slot becomes the head of list; it is unlinked first if on a list
+    public void addFirst( int list, int slot ) {
+        remove( slot );
+        link( list, slot, NONE, head[list] );
+    }
+
+    // slot becomes the tail of list
+    public void addLast( int list, int slot ) {
+        remove( slot );
+        link( list, slot, tail[list], NONE );
+    }
+
+    // slot goes just in front of at, on at's list
+    public void addBefore( int at, int slot ) {
+        remove( slot );
+        link( owner[at], slot, prev[at], at );
+    }
+
+    public void remove( int slot ) {
+        int list = owner[slot];
+        if ( list == NONE )
+            return;
+        if ( prev[slot] == NONE )
+            head[list] = next[slot];
+        else
+            next[prev[slot]] = next[slot];
+        if ( next[slot] == NONE )
+            tail[list] = prev[slot];
+        else
+            prev[next[slot]] = prev[slot];
+        owner[slot] = NONE;
+        size[list]--;
+    }
+
+    private void link( int list, int slot, int before, int after ) {
+        prev[slot] = before;
+        next[slot] = after;
+        if ( before == NONE )
+            head[list] = slot;
+        else
+            next[before] = slot;
+        if ( after == NONE )
+            tail[list] = slot;
+        else
+            prev[after] = slot;
+        owner[slot] = list;
+        size[list]++;
+    }
+}
@@ -0,0 +1,20 @@
+/** ========================================== SsdModel.java ==============================================
+ * SUMMARY
+ * Flash device: a flat per-command cost wherever the block is, a small
+ * cost per block transferred, and several channels serving requests in
+ * parallel.
+ */
+
+public class SsdModel implements DiskModel {
+    private final long commandTime = 100;        // per request, any block
+    private final long transferPerBlock = 10;    // per block moved
+    private final int channels = 8;              // requests in flight
+
+    public long serviceTime( int headBlockId, int blockId, int count ) {
+        return commandTime + transferPerBlock * count;
+    }
+
+    public int parallelism( ) {
+        return channels;
+    }
+}
@@ -0,0 +1,147 @@
+/** ========================================== StripedDisk.java ==============================================
+ * SUMMARY
+ * RAID-0: logical blocks are spread over several Disks, stripeUnit blocks
+ * at a time in turn. Each member has its own backing file, head and service
+ * thread, so the pieces of a request that land on different members are
+ * served in parallel.
+ *
+ * Logical block L lives in stripe L / stripeUnit, on member
+ * stripe % members, at member block
+ * ( stripe / members ) * stripeUnit + L % stripeUnit.
+ * The blocks a contiguous logical run places on one member are contiguous
+ * on that member, so a run becomes at most one request per member.
+ */
+
+public class StripedDisk implements BlockDevice {
+    private Disk members[];
+    private int stripeUnit;      // consecutive blocks placed on one member
+    private int totalBlocks;     // logical size of the volume
+
+    public StripedDisk( Disk members[], int stripeUnit, int totalBlocks ) {
+        this.members = members;
+        this.stripeUnit = stripeUnit;
+        this.totalBlocks = totalBlocks;
+    }
+
+    // # blocks each of n members needs to hold totalBlocks logical blocks
+    public static int memberBlocks( int totalBlocks, int n, int stripeUnit ) {
+        int stripes = ( totalBlocks + stripeUnit - 1 ) / stripeUnit;
+        return ( stripes + n - 1 ) / n * stripeUnit;
+    }
+
+    public void start( ) {
+        for ( int i = 0; i < members.length; i++ )
+            members[i].start( );
+    }
+
+    public void report( StringBuffer out ) {
+        for ( int i = 0; i < members.length; i++ )
+            members[i].report( out );
+    }
+
+    public DiskRequest submit( DiskRequest request ) {
+        if ( request.command == DiskRequest.SYNC ) {
+            request.split( members.length );
+            for ( int i = 0; i < members.length; i++ )
+                members[i].submit( new DiskRequest( DiskRequest.SYNC, 0, 0,
+                                                    null, request ) );
+            return request;
+        }
+
+        if ( request.blockId < 0 || request.count < 1
+             || request.blockId + request.count > totalBlocks
+             || request.buffer.length < request.count * Disk.blockSize ) {
+            SysLib.cerr( "threadOS: a wrong blockId for "
+                         + ( request.command == DiskRequest.READ ?
+                             "read\n" : "write\n" ) );
+            return null;
+        }
+
+        // a single block needs no copying: its piece uses the caller's buffer
+        if ( request.count == 1 ) {
+            request.split( 1 );
+            members[ member( request.blockId ) ]
+                .submit( new DiskRequest( request.command,
+                                          memberBlock( request.blockId ), 1,
+                                          request.buffer, request ) );
+            return request;
+        }
+
+        // find the first logical block and block count each member serves
+        int n = members.length;
+        int first[] = new int[n];
+        int count[] = new int[n];
+        int used = 0;
+        for ( int i = 0; i < n; i++ )
+            first[i] = -1;
+        for ( int blk = request.blockId; blk < request.blockId + request.count;
+              blk++ ) {
+            int m = member( blk );
+            if ( first[m] == -1 ) {
+                first[m] = blk;
+                used++;
+            }
+            count[m]++;
+        }
+
+        request.split( used );
+        for ( int m = 0; m < n; m++ )
+            if ( first[m] != -1 )
+                members[m].submit( new Piece( request, m,
+                                              memberBlock( first[m] ),
+                                              count[m] ) );
+        return request;
+    }
+
+    // member holding logical block blk
+    private int member( int blk ) {
+        return ( blk / stripeUnit ) % members.length;
+    }
+
+    // block number of logical block blk on its member
+    private int memberBlock( int blk ) {
+        return ( blk / stripeUnit / members.length ) * stripeUnit
+            + blk % stripeUnit;
+    }
+
+    // logical block number of block b on member m
+    private int logicalBlock( int m, int b ) {
+        return ( ( b / stripeUnit ) * members.length + m ) * stripeUnit
+            + b % stripeUnit;
+    }
+
+    // the part of a multi-block request one member serves, staged in its
+    // own contiguous buffer: gathered from the caller's buffer before a
+    // write, scattered into it after a read
+    private class Piece extends DiskRequest {
+        private int member;
+
+        Piece( DiskRequest whole, int member, int blockId, int count ) {
+            super( whole.command, blockId, count,
+                   new byte[ count * Disk.blockSize ], whole );
+            this.member = member;
+            if ( command == DiskRequest.WRITE )
+                copy( true );
+        }
+
+        void complete( ) {
+            if ( command == DiskRequest.READ )
+                copy( false );
+            super.complete( );
+        }
+
+        private void copy( boolean gather ) {
+            for ( int i = 0; i < count; i++ ) {
+                int offset = ( logicalBlock( member, blockId + i )
+                               - whole.blockId ) * Disk.blockSize;
+                if ( gather )
+                    System.arraycopy( whole.buffer, offset,
+                                      buffer, i * Disk.blockSize,
+                                      Disk.blockSize );
+                else
+                    System.arraycopy( buffer, i * Disk.blockSize,
+                                      whole.buffer, offset, Disk.blockSize );
+            }
+        }
+    }
+}
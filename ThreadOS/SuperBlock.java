@@ -11,20 +11,30 @@
  * back to disk the contents of SuperBlock. If validation fails, it will format the disk and write a new SuperBlock to
  * disk
  *
+ * Fields of the superblock and links of the free list are read and patched in place through pinned cache views,
+ * rather than by copying whole blocks in and out of the cache.
  */
+
+import java.nio.ByteBuffer;
+
 public class SuperBlock {
 	private final int defaultInodeBlocks = 64;
 	private final int totalBlockLocation = 0;
 	private final int totalInodeLocation = 4;
 	private final int freeListLocation = 8;
-	private final int defaultBlocks = 1000;
+	private final int blockSizeLocation = 12;   // 0 on images older than this field
+	private final int warmUpLocation = 16;      // 0 until the first sync records one
+	private final int formatBatchBytes = 1 << 20; // largest run written by format
 
     public int totalBlocks; // the number of disk blocks
     public int totalInodes; // the number of inodes
     public int freeList;    // the block number of the free list's head
+    public int warmUpBlock; // block listing the hottest cached blocks, 0 if none
 
 	public int inodeBlocks;
 
+	private byte[] link = new byte[4];   // next-free pointer written by returnBlock
+
 	/** Constructor
 	 * Public constructor for SuperBlock accepts a single int argument equal to the total number of blocks on Disk.
 	 * The constructor will read the SuperBlock from disk and initialize member variables for the number of blocks, the
@@ -33,19 +43,27 @@ public class SuperBlock {
 	 */
 	public SuperBlock(int numBlocks){
 
-		byte [] superBlock = new byte[Disk.blockSize];
+		// pointer width (and so inode layout) follows the volume size
+		Inode.setVolumeSize(numBlocks);
 
-		SysLib.rawread(0, superBlock);
+		ByteBuffer superBlock = SysLib.cpin(0, false);
 
-		totalBlocks = SysLib.bytes2int(superBlock, totalBlockLocation);
-		totalInodes = SysLib.bytes2int(superBlock, totalInodeLocation);
+		totalBlocks = superBlock.getInt(totalBlockLocation);
+		totalInodes = superBlock.getInt(totalInodeLocation);
 
-		freeList = SysLib.bytes2int(superBlock, freeListLocation);
+		freeList = superBlock.getInt(freeListLocation);
+		int blockSize = superBlock.getInt(blockSizeLocation);
+		warmUpBlock = superBlock.getInt(warmUpLocation);
+		SysLib.cunpin(0, superBlock);
 
 		inodeBlocks = totalInodes;
 
-		//disk contents validation
-		if (totalBlocks == numBlocks && totalInodes > 0 && freeList >= 2){
+		//disk contents validation, a missing block size means 512 bytes
+		if (blockSize == 0)
+			blockSize = 512;
+		if (warmUpBlock < 0 || warmUpBlock >= numBlocks)
+			warmUpBlock = 0;
+		if (totalBlocks == numBlocks && blockSize == Disk.blockSize && totalInodes > 0 && freeList >= 2){
 			return;     // valid
 		}
 		else
@@ -58,16 +76,18 @@ public class SuperBlock {
 	/** Sync
 	 * The Sync method brings the physical SuperBlock contents (at block zero on disk) in line with any updates
 	 * performed to the SuperBlock class instance. Sync will write back to disk the total number of blocks, the total
-	 * number of inodes, and the free list.
+	 * number of inodes, the free list and the warm-up block.
 	 */
 	public void sync ()
 	{
-		byte[] tempData = new byte[Disk.blockSize];
-		SysLib.int2bytes(freeList, tempData, freeListLocation);
-		SysLib.int2bytes(totalBlocks, tempData, totalBlockLocation);
-		SysLib.int2bytes(totalInodes, tempData, totalInodeLocation);
-
-		SysLib.rawwrite(0, tempData);
+		ByteBuffer tempData = SysLib.cpin(0, true);
+		tempData.putInt(freeListLocation, freeList);
+		tempData.putInt(totalBlockLocation, totalBlocks);
+		tempData.putInt(totalInodeLocation, totalInodes);
+		tempData.putInt(blockSizeLocation, Disk.blockSize);
+		tempData.putInt(warmUpLocation, warmUpBlock);
+
+		SysLib.cunpin(0, tempData);
 	}
 
 	/** Next Free Block
@@ -80,13 +100,13 @@ public class SuperBlock {
 	{
 		if (freeList > 0 && freeList < totalBlocks)
 		{
-			byte[] tempData = new byte[Disk.blockSize];
-			SysLib.rawread(freeList, tempData);
+			ByteBuffer tempData = SysLib.cpin(freeList, false);
 
 			int temp = freeList;
 
 			// update next free block
-			freeList = SysLib.bytes2int(tempData, 0);
+			freeList = tempData.getInt(0);
+			SysLib.cunpin(temp, tempData);
 
 			// return block location
 			return temp;
@@ -96,50 +116,22 @@ public class SuperBlock {
 	}
 
 	/** Return Block
-	 * The returnBlock method attempts to add a newly freed block back to the free list. The newly freed block is added
-	 * to the end of the free block queue which operates as FIFO. If the freed block does not conform to the actual disk
-	 * parameters held in SuperBlock, the operation fails and returns false.
+	 * The returnBlock method adds a newly freed block back to the free list. The freed block becomes the head of the
+	 * list and links to the old head, so freeing takes one write of the link however long the list is; the rest of
+	 * the block is neither read nor cleared. If the freed block does not conform to the actual disk parameters held in
+	 * SuperBlock, the operation fails and returns false.
 	 * @param blockNumber
 	 * @return
 	 */
-	public boolean returnBlock(int blockNumber)
+	public synchronized boolean returnBlock(int blockNumber)
 	{
 		if (blockNumber > 0 && blockNumber < totalBlocks)
 		{
-			int nextFree = freeList;
-			int temp = 0;
-
-			byte [] next = new byte[Disk.blockSize];
-
-			byte [] newBlock = new byte[Disk.blockSize];
-
-
-			//erase block
-			for(int i = 0; i < Disk.blockSize; i++)
-			{
-				newBlock[i] = 0;
-			}
-
-			SysLib.int2bytes(-1, newBlock, 0);
-
-			while (nextFree != -1)
-			{
-				SysLib.rawread(nextFree, next);
-
-				temp = SysLib.bytes2int(next, 0);
-
-				if (temp == -1)
-				{
-					// set next free
-					SysLib.int2bytes(blockNumber, next, 0);
-					SysLib.rawwrite(nextFree, next);
-					SysLib.rawwrite(blockNumber, newBlock);
-
-					return true;    //operation complete
-				}
+			SysLib.int2bytes(freeList, link, 0);
+			SysLib.cwrite(blockNumber, 0, link, 0, link.length);
+			freeList = blockNumber;
 
-				nextFree = temp;
-			}
+			return true;    //operation complete
 		}
 
 		return false;   // invalid block returned
@@ -148,7 +140,9 @@ public class SuperBlock {
 	/** Format
 	 * The public format method cleans the disk of all data and resets the correct structure if the SuperBlock detects
 	 * an illegal state during initialization of an instance. All instance variables of SuperBlock are cleared to
-	 * default values and written back to the newly cleared disk.
+	 * default values and written back to the newly cleared disk. The inode blocks and the free list follow the
+	 * volume's block count and block size, and are written as vectored runs of up to formatBatchBytes so that
+	 * formatting a large volume does not pay one seek per block.
 	 * @param numberOfFiles
 	 */
     public void format (int numberOfFiles){
@@ -160,52 +154,64 @@ public class SuperBlock {
 
 		totalInodes = numberOfFiles;
 		inodeBlocks = totalInodes;
-		Inode dummy = null;
-
-		for (int i = 0; i < totalInodes; i++)
+		warmUpBlock = 0;
+		Inode dummy = new Inode();
+		dummy.flag = 0;
+
+		// all inode blocks sit at 1, 2, ... so they go out in one run
+		int perBlock = Inode.inodesPerBlock();
+		int inodeBlockCount = (totalInodes + perBlock - 1) / perBlock;
+		if (inodeBlockCount > 0)
 		{
-			dummy = new Inode();
-			dummy.flag = 0;
-			dummy.toDisk((short) i);
+			byte [] inodes = new byte[inodeBlockCount * Disk.blockSize];
+			for (int i = 0; i < totalInodes; i++)
+			{
+				dummy.toBytes(inodes, (i / perBlock) * Disk.blockSize
+						+ (i % perBlock) * (Disk.blockSize / perBlock));
+			}
+			writeRun(1, inodes);
 		}
 
-		freeList = (totalInodes / 16) + 2;
+		freeList = (totalInodes / perBlock) + 2;
 
-		byte [] newEmpty = null;    // new dummy block
-
-		for (int i = freeList; i < defaultBlocks - 1; i++)
+		// link every free block to the next one, the last one ends the list
+		int batchBlocks = Math.max(1, formatBatchBytes / Disk.blockSize);
+		for (int start = freeList; start < totalBlocks; start += batchBlocks)
 		{
-			newEmpty = new byte [Disk.blockSize];
+			int count = Math.min(batchBlocks, totalBlocks - start);
+			byte [] newEmpty = new byte [count * Disk.blockSize];    // new dummy blocks
 
-			//erase
-			for (int j = 0; j < Disk.blockSize; j++)
+			for (int i = 0; i < count; i++)
 			{
-				newEmpty[j] = 0;
+				int next = (start + i < totalBlocks - 1) ? start + i + 1 : -1;
+				SysLib.int2bytes(next, newEmpty, i * Disk.blockSize);
 			}
-
-			SysLib.int2bytes(i+1, newEmpty, 0);
-			SysLib.rawwrite(i, newEmpty);
-		}
-
-		newEmpty = new byte[Disk.blockSize];
-
-		//erase
-		for (int j = 0; j < Disk.blockSize; j++)
-		{
-			newEmpty[j] = 0;
+			writeRun(start, newEmpty);
 		}
 
-		SysLib.int2bytes(-1, newEmpty, 0);
-		SysLib.rawwrite(defaultBlocks - 1, newEmpty);
 		byte[] replacementSuper = new byte[Disk.blockSize];
 
 		// copy back all components
 		SysLib.int2bytes(totalBlocks, replacementSuper, totalBlockLocation);
 		SysLib.int2bytes(totalInodes, replacementSuper, totalInodeLocation);
 		SysLib.int2bytes(freeList, replacementSuper, freeListLocation);
+		SysLib.int2bytes(Disk.blockSize, replacementSuper, blockSizeLocation);
 
 		// write new super
-		SysLib.rawwrite(0, replacementSuper);
+		SysLib.cwrite(0, replacementSuper);
 
     }
+
+	/** Write Run
+	 * Writes data.length / Disk.blockSize consecutive blocks starting at blockNumber in a single request.
+	 * @param blockNumber
+	 * @param data
+	 */
+	private void writeRun(int blockNumber, byte[] data)
+	{
+		if (data.length == Disk.blockSize)
+			SysLib.cwrite(blockNumber, data);
+		else
+			SysLib.cwritev(blockNumber, data);
+	}
 }
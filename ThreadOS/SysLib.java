@@ -1,4 +1,5 @@
 import java.util.*;
+import java.nio.ByteBuffer;
 
 public class SysLib {
     //------------------------------------------------------------------------------------------------------------------
@@ -35,6 +36,22 @@ public class SysLib {
         return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE, Kernel.WRITE, fd, buffer );
     }
 
+    // reads buffer.length bytes of fd's file from offset on, leaving
+    // its seek pointer alone
+    public static int pread(int fd, byte[] buffer, int offset)
+    {
+        return Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, Kernel.PREAD, fd,
+                                range.get().set(offset, buffer, 0, buffer.length));
+    }
+
+    // writes buffer to fd's file from offset on, leaving its seek
+    // pointer alone; a file opened "a" only at its end
+    public static int pwrite(int fd, byte[] buffer, int offset)
+    {
+        return Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, Kernel.PWRITE, fd,
+                                range.get().set(offset, buffer, 0, buffer.length));
+    }
+
     // updates seek pointer corresponding to fd
     public static int seek(int fd, int offset, int whence)
     {
@@ -71,6 +88,12 @@ public class SysLib {
 				 Kernel.BOOT, 0, null );
     }
 
+    // boots with options such as "-disk mapped" (see Kernel.bootOption)
+    public static int boot( String args[] ) {
+	return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.BOOT, 0, args );
+    }
+
     public static int exit( ) {
 	return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
 				 Kernel.EXIT, 0, null );
@@ -111,6 +134,48 @@ public class SysLib {
 				 Kernel.RAWWRITE, blkNumber, b );
     }
 
+    // reads b.length / blockSize consecutive blocks starting at blkNumber
+    public static int rawreadv( int blkNumber, byte[] b ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.RAWREADV, blkNumber, b );
+    }
+
+    // writes b.length / blockSize consecutive blocks starting at blkNumber
+    public static int rawwritev( int blkNumber, byte[] b ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.RAWWRITEV, blkNumber, b );
+    }
+
+    // queues a request on the disk and returns at once; completion can be
+    // polled with r.isDone( ) or waited for with rawwait( r )
+    public static int rawsubmit( DiskRequest r ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.RAWSUBMIT, 0, r );
+    }
+
+    public static int rawwait( DiskRequest r ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.RAWWAIT, 0, r );
+    }
+
+    // returns a handle on the queued read, or null if it was rejected
+    public static DiskRequest rawreadAsync( int blkNumber, byte[] b ) {
+	DiskRequest r = new DiskRequest( DiskRequest.READ, blkNumber, b );
+	return ( rawsubmit( r ) == Kernel.OK ) ? r : null;
+    }
+
+    // returns a handle on the queued write, or null if it was rejected
+    public static DiskRequest rawwriteAsync( int blkNumber, byte[] b ) {
+	DiskRequest r = new DiskRequest( DiskRequest.WRITE, blkNumber, b );
+	return ( rawsubmit( r ) == Kernel.OK ) ? r : null;
+    }
+
+    // appends the statistics of the cache and of every disk to s
+    public static int dstat( StringBuffer s ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.DSTAT, 0, s );
+    }
+
     public static int sync( ) {
         return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
 				 Kernel.SYNC, 0, null );
@@ -126,6 +191,77 @@ public class SysLib {
 				 Kernel.CWRITE, blkNumber, b );
     }
 
+    // reads b.length / blockSize consecutive blocks through the cache
+    public static int creadv( int blkNumber, byte[] b ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.CREADV, blkNumber, b );
+    }
+
+    // writes b.length / blockSize consecutive blocks through the cache
+    public static int cwritev( int blkNumber, byte[] b ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.CWRITEV, blkNumber, b );
+    }
+
+    // starts reading count blocks from blkNumber on into the cache
+    public static int cprefetch( int blkNumber, int count ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE, Kernel.CPREFETCH,
+				 blkNumber, range.get( ).set( 0, null, 0, count ) );
+    }
+
+    // returns a view of block blkNumber's cache frame, writable if write,
+    // or null; the frame is not evicted until cunpin( blkNumber, view )
+    public static ByteBuffer cpin( int blkNumber, boolean write ) {
+        ByteBuffer[] view = new ByteBuffer[1];
+        int status = Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				       write ? Kernel.CPINW : Kernel.CPIN,
+				       blkNumber, view );
+        return ( status == Kernel.OK ) ? view[0] : null;
+    }
+
+    // releases a view taken by cpin; a writable one leaves the block dirty
+    public static int cunpin( int blkNumber, ByteBuffer view ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.CUNPIN, blkNumber, view );
+    }
+
+    // fills blocks[] with the most referenced cached blocks, hottest first,
+    // and returns how many it listed
+    public static int chot( int[] blocks ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.CHOT, 0, blocks );
+    }
+
+    // rebuilds the cache with frames frames, writing dirty blocks back
+    public static int cresize( int frames ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
+				 Kernel.CRESIZE, frames, null );
+    }
+
+    // reads bytes from .. from + length - 1 of block blkNumber, through the
+    // cache, into b[offset ..]
+    public static int cread( int blkNumber, int from, byte[] b, int offset,
+			     int length ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE, Kernel.CREADAT,
+				 blkNumber, range.get( ).set( from, b, offset, length ) );
+    }
+
+    // overwrites bytes from .. from + length - 1 of block blkNumber, through
+    // the cache, from b[offset ..]; the rest of the block is not read first
+    public static int cwrite( int blkNumber, int from, byte[] b, int offset,
+			      int length ) {
+        return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE, Kernel.CWRITEAT,
+				 blkNumber, range.get( ).set( from, b, offset, length ) );
+    }
+
+    // the calling thread's BlockRange, reused by every cread, cwrite and
+    // cprefetch
+    private static ThreadLocal<BlockRange> range = new ThreadLocal<BlockRange>( ) {
+        protected BlockRange initialValue( ) {
+            return new BlockRange( );
+        }
+    };
+
     public static int flush( ) {
         return Kernel.interrupt( Kernel.INTERRUPT_SOFTWARE,
 				 Kernel.CFLUSH, 0, null );
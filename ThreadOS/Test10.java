@@ -0,0 +1,109 @@
+import java.nio.ByteBuffer;
+
+class Test10 extends Thread {
+  final static int BLOCKS = 40;   // file blocks, more than the default cache
+  byte[] file;                    // what "rtest" holds
+  int fd;
+
+  public void run( ) {
+    SysLib.format( 48 );
+    file = new byte[BLOCKS * Disk.blockSize];
+    for ( int i = 0; i < file.length; i++ )
+      file[i] = ( byte )( i % 251 );
+    fd = SysLib.open( "rtest", "w+" );
+    SysLib.write( fd, file );
+
+    if ( test1( ) ) // sequential read of the whole file
+      SysLib.cout("Correct behavior of reading ahead..............\n");
+    if ( test2( ) ) // grow the cache, then read again
+      SysLib.cout("Correct behavior of reading a grown cache......\n");
+    if ( test3( ) ) // shrink it back, then read again
+      SysLib.cout("Correct behavior of reading a shrunk cache.....\n");
+    if ( test4( ) ) // unpins that match no pin, then resize
+      SysLib.cout("Correct behavior of refusing wrong unpins......\n");
+
+    SysLib.close( fd );
+    SysLib.cout( "Test completed\n" );
+    SysLib.exit( );
+  }
+
+  private boolean test1( ) {
+    //.............................................."
+    SysLib.cout( "1: read \"rtest\" block by block......" );
+    return readAll( );
+  }
+
+  private boolean test2( ) {
+    //.............................................."
+    SysLib.cout( "2: cresize( 400 ) and read again....." );
+    if ( SysLib.cresize( 400 ) != 0 ) {
+      SysLib.cout( "cresize( 400 ) failed (wrong)\n" );
+      return false;
+    }
+    return readAll( );
+  }
+
+  private boolean test3( ) {
+    //.............................................."
+    SysLib.cout( "3: cresize( 10 ) and read again......" );
+    if ( SysLib.cresize( 10 ) != 0 ) {
+      SysLib.cout( "cresize( 10 ) failed (wrong)\n" );
+      return false;
+    }
+    return readAll( );
+  }
+
+  private boolean test4( ) {
+    //.............................................."
+    SysLib.cout( "4: wrong cunpins, then cresize......." );
+    ByteBuffer view = SysLib.cpin( 0, false );
+    ByteBuffer[] stolen = new ByteBuffer[1];
+    Thread other = new Thread( ) {
+      public void run( ) {
+        stolen[0] = ( SysLib.cunpin( 0, view ) == 0 ) ? view : null;
+      }
+    };
+    other.start( );
+    try {
+      other.join( );
+    } catch ( InterruptedException e ) { }
+    if ( SysLib.cunpin( 1, view ) != -1 || SysLib.cunpin( 0, null ) != -1
+         || stolen[0] != null ) {
+      SysLib.cout( "a wrong cunpin succeeded (wrong)\n" );
+      return false;
+    }
+    if ( SysLib.cunpin( 0, view ) != 0 || SysLib.cunpin( 0, view ) != -1 ) {
+      SysLib.cout( "cunpin( 0 ) not exactly once (wrong)\n" );
+      return false;
+    }
+    // a pin left held would keep this waiting forever
+    if ( SysLib.cresize( 20 ) != 0 ) {
+      SysLib.cout( "cresize( 20 ) failed (wrong)\n" );
+      return false;
+    }
+    return readAll( );
+  }
+
+  // reads the file from the start, one block at a time so each read
+  // widens the read-ahead window, and compares it with file[]
+  private boolean readAll( ) {
+    SysLib.seek( fd, 0, 0 );
+    byte[] tmpBuf = new byte[Disk.blockSize];
+    for ( int offset = 0; offset < file.length; offset += tmpBuf.length ) {
+      int size = SysLib.read( fd, tmpBuf );
+      if ( size != tmpBuf.length ) {
+        SysLib.cout( "size = " + size + " at " + offset + " (wrong)\n" );
+        return false;
+      }
+      for ( int i = 0; i < size; i++ ) {
+        if ( tmpBuf[i] != file[offset + i] ) {
+          SysLib.cout( "byte " + ( offset + i ) + " = " + tmpBuf[i]
+                       + " (wrong)\n" );
+          return false;
+        }
+      }
+    }
+    SysLib.cout( "successfully completed\n" );
+    return true;
+  }
+}
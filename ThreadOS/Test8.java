@@ -0,0 +1,209 @@
+class Test8 extends Thread {
+  final static int LENGTH = 512 * 3 + 100;   // three blocks and a bit
+  final byte[] file = new byte[LENGTH];      // what "ptest" should hold
+  int fd;
+
+  public void run( ) {
+    for ( int i = 0; i < LENGTH; i++ )
+      file[i] = ( byte )( i % 127 );
+
+    if ( test1( ) ) // create "ptest" and write it with write
+      SysLib.cout("Correct behavior of setting up \"ptest\"..........\n");
+    if ( test2( ) ) // pread inside the file
+      SysLib.cout("Correct behavior of pread.......................\n");
+    if ( test3( ) ) // pread at and past the end
+      SysLib.cout("Correct behavior of pread at end of file........\n");
+    if ( test4( ) ) // pwrite mid-block and block aligned
+      SysLib.cout("Correct behavior of pwrite......................\n");
+    if ( test5( ) ) // pwrite at and past the end
+      SysLib.cout("Correct behavior of pwrite at end of file.......\n");
+    if ( test6( ) ) // close fd, pwrite with "r" and "a"
+      SysLib.cout("Correct behavior of pwrite and open modes.......\n");
+
+    SysLib.cout( "Test completed\n" );
+    SysLib.exit( );
+  }
+
+  private boolean test1( ) {
+    //.............................................."
+    SysLib.cout( "1: format( 48 ) and write \"ptest\"....." );
+    SysLib.format( 48 );
+    fd = SysLib.open( "ptest", "w+" );
+    int size = SysLib.write( fd, file );
+    if ( size != LENGTH ) {
+      SysLib.cout( "size = " + size + " (wrong)\n" );
+      return false;
+    }
+    SysLib.seek( fd, 0, 0 );
+    SysLib.cout( "successfully completed\n" );
+    return true;
+  }
+
+  private boolean test2( ) {
+    //.............................................."
+    SysLib.cout( "2: pread buf[600] from 300..........." );
+    byte[] tmpBuf = new byte[600];
+    int size = SysLib.pread( fd, tmpBuf, 300 );
+    if ( size != 600 ) {
+      SysLib.cout( "size = " + size + " (wrong)\n" );
+      return false;
+    }
+    if ( !matches( tmpBuf, 300, size ) )
+      return false;
+    // a single block, and one starting on a block boundary
+    size = SysLib.pread( fd, new byte[10], 5 ) + SysLib.pread( fd, tmpBuf, 512 );
+    if ( size != 610 || !matches( tmpBuf, 512, 600 ) ) {
+      SysLib.cout( "size = " + size + " (wrong)\n" );
+      return false;
+    }
+    return unmoved( 0 );
+  }
+
+  private boolean test3( ) {
+    //.............................................."
+    SysLib.cout( "3: pread at and past the end........" );
+    byte[] tmpBuf = new byte[100];
+    int size = SysLib.pread( fd, tmpBuf, LENGTH - 40 );
+    if ( size != 40 || !matches( tmpBuf, LENGTH - 40, size ) ) {
+      SysLib.cout( "size = " + size + " (wrong)\n" );
+      return false;
+    }
+    size = SysLib.pread( fd, tmpBuf, LENGTH );
+    if ( size != 0 ) {
+      SysLib.cout( "pread at end = " + size + " (wrong)\n" );
+      return false;
+    }
+    size = SysLib.pread( fd, tmpBuf, LENGTH + 512 );
+    if ( size != 0 ) {
+      SysLib.cout( "pread past end = " + size + " (wrong)\n" );
+      return false;
+    }
+    if ( SysLib.pread( fd, tmpBuf, -1 ) != -1 ) {
+      SysLib.cout( "pread at -1 succeeded (wrong)\n" );
+      return false;
+    }
+    return unmoved( 0 );
+  }
+
+  private boolean test4( ) {
+    //.............................................."
+    SysLib.cout( "4: pwrite mid-block and aligned....." );
+    SysLib.seek( fd, 100, 0 );
+    byte[] buf50 = new byte[50];
+    for ( int i = 0; i < 50; i++ )
+      buf50[i] = ( byte )( 100 + i );
+    byte[] buf512 = new byte[512];
+    for ( int i = 0; i < 512; i++ )
+      buf512[i] = ( byte )( -i );
+    int size = SysLib.pwrite( fd, buf50, 700 );
+    if ( size != 50 ) {
+      SysLib.cout( "mid-block size = " + size + " (wrong)\n" );
+      return false;
+    }
+    System.arraycopy( buf50, 0, file, 700, 50 );
+    size = SysLib.pwrite( fd, buf512, 1024 );
+    if ( size != 512 ) {
+      SysLib.cout( "aligned size = " + size + " (wrong)\n" );
+      return false;
+    }
+    System.arraycopy( buf512, 0, file, 1024, 512 );
+    if ( SysLib.fsize( fd ) != LENGTH ) {
+      SysLib.cout( "fsize = " + SysLib.fsize( fd ) + " (wrong)\n" );
+      return false;
+    }
+    // once from the cache, once from disk
+    for ( int pass = 0; pass < 2; pass++ ) {
+      byte[] tmpBuf = new byte[LENGTH];
+      size = SysLib.pread( fd, tmpBuf, 0 );
+      if ( size != LENGTH || !matches( tmpBuf, 0, size ) )
+        return false;
+      SysLib.flush( );
+    }
+    return unmoved( 100 );
+  }
+
+  private boolean test5( ) {
+    //.............................................."
+    SysLib.cout( "5: pwrite at and past the end......." );
+    byte[] buf24 = new byte[24];
+    for ( int i = 0; i < 24; i++ )
+      buf24[i] = ( byte )( 50 - i );
+    if ( SysLib.pwrite( fd, buf24, LENGTH + 1 ) != -1 ) {
+      SysLib.cout( "pwrite past end succeeded (wrong)\n" );
+      return false;
+    }
+    if ( SysLib.fsize( fd ) != LENGTH ) {
+      SysLib.cout( "fsize = " + SysLib.fsize( fd ) + " (wrong)\n" );
+      return false;
+    }
+    int size = SysLib.pwrite( fd, buf24, LENGTH );
+    if ( size != 24 || SysLib.fsize( fd ) != LENGTH + 24 ) {
+      SysLib.cout( "size = " + size + ", fsize = " + SysLib.fsize( fd )
+                   + " (wrong)\n" );
+      return false;
+    }
+    byte[] tmpBuf = new byte[24];
+    size = SysLib.pread( fd, tmpBuf, LENGTH );
+    for ( int i = 0; i < 24; i++ ) {
+      if ( tmpBuf[i] != buf24[i] ) {
+        SysLib.cout( "buf[" + i + "] = " + tmpBuf[i] + " (wrong)\n" );
+        return false;
+      }
+    }
+    return unmoved( 100 );
+  }
+
+  private boolean test6( ) {
+    //.............................................."
+    SysLib.cout( "6: pwrite on \"r\" and \"a\" entries....." );
+    byte[] buf16 = new byte[16];
+    int length = SysLib.fsize( fd );
+    SysLib.close( fd );
+    int reader = SysLib.open( "ptest", "r" );
+    int size = SysLib.pwrite( reader, buf16, 0 );
+    SysLib.close( reader );
+    if ( size != -1 ) {
+      SysLib.cout( "pwrite on \"r\" = " + size + " (wrong)\n" );
+      return false;
+    }
+    int appender = SysLib.open( "ptest", "a" );
+    size = SysLib.pwrite( appender, buf16, 0 );
+    if ( size != -1 ) {
+      SysLib.close( appender );
+      SysLib.cout( "pwrite on \"a\" at 0 = " + size + " (wrong)\n" );
+      return false;
+    }
+    size = SysLib.pwrite( appender, buf16, length );
+    int fileSize = SysLib.fsize( appender );
+    SysLib.close( appender );
+    if ( size != 16 || fileSize != length + 16 ) {
+      SysLib.cout( "pwrite on \"a\" at end = " + size + " (wrong)\n" );
+      return false;
+    }
+    SysLib.cout( "successfully completed\n" );
+    return true;
+  }
+
+  // tmpBuf[0 .. size - 1] holds the file's bytes from offset on
+  private boolean matches( byte[] tmpBuf, int offset, int size ) {
+    for ( int i = 0; i < size; i++ ) {
+      if ( tmpBuf[i] != file[offset + i] ) {
+        SysLib.cout( "byte " + ( offset + i ) + " = " + tmpBuf[i]
+                     + " (wrong)\n" );
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // the seek pointer is still where it was left
+  private boolean unmoved( int seekPtr ) {
+    int position = SysLib.seek( fd, 0, 1 );
+    if ( position != seekPtr ) {
+      SysLib.cout( "seek pointer = " + position + " (wrong)\n" );
+      return false;
+    }
+    SysLib.cout( "successfully completed\n" );
+    return true;
+  }
+}
@@ -0,0 +1,96 @@
+class Test9 extends Thread {
+  final static int BLOCK = Disk.blockSize;   // as booted, "-blocksize n"
+  byte[] file = new byte[BLOCK * 6];         // what "wtest" should hold
+  int length;                                // bytes of it written so far
+  int fd;
+
+  public void run( ) {
+    SysLib.format( 48 );
+    fd = SysLib.open( "wtest", "w+" );
+
+    if ( test1( ) ) // whole blocks into fresh ones
+      SysLib.cout("Correct behavior of writing whole new blocks...\n");
+    if ( test2( ) ) // a few bytes inside an uncached block
+      SysLib.cout("Correct behavior of writing inside a block.....\n");
+    if ( test3( ) ) // one whole, aligned, uncached block
+      SysLib.cout("Correct behavior of overwriting a whole block..\n");
+    if ( test4( ) ) // partial, whole and partial block in one write
+      SysLib.cout("Correct behavior of writing across blocks......\n");
+    if ( test5( ) ) // past the end, into the last block and a new one
+      SysLib.cout("Correct behavior of growing the file...........\n");
+
+    SysLib.close( fd );
+    SysLib.cout( "Test completed\n" );
+    SysLib.exit( );
+  }
+
+  private boolean test1( ) {
+    //.............................................."
+    SysLib.cout( "1: write four blocks to \"wtest\"....." );
+    return write( 0, BLOCK * 4, 1 );
+  }
+
+  private boolean test2( ) {
+    //.............................................."
+    SysLib.cout( "2: write buf[20] mid-block..........." );
+    return write( BLOCK + BLOCK / 3, 20, 2 );
+  }
+
+  private boolean test3( ) {
+    //.............................................."
+    SysLib.cout( "3: write a whole aligned block......." );
+    return write( BLOCK * 2, BLOCK, 3 );
+  }
+
+  private boolean test4( ) {
+    //.............................................."
+    SysLib.cout( "4: write across three blocks........" );
+    return write( BLOCK - 100, BLOCK + 200, 4 );
+  }
+
+  private boolean test5( ) {
+    //.............................................."
+    SysLib.cout( "5: write past the end..............." );
+    return write( BLOCK * 4 - 48, BLOCK + 188, 5 );
+  }
+
+  // writes size bytes of pattern at offset, after flushing the cache so
+  // every block starts on disk only, then reads the whole file back from
+  // the cache and again from disk
+  private boolean write( int offset, int size, int pattern ) {
+    SysLib.flush( );
+    byte[] buf = new byte[size];
+    for ( int i = 0; i < size; i++ )
+      buf[i] = ( byte )( pattern * 31 + i );
+    SysLib.seek( fd, offset, 0 );
+    int written = SysLib.write( fd, buf );
+    if ( written != size ) {
+      SysLib.cout( "size = " + written + " (wrong)\n" );
+      return false;
+    }
+    System.arraycopy( buf, 0, file, offset, size );
+    length = Math.max( length, offset + size );
+    if ( SysLib.fsize( fd ) != length ) {
+      SysLib.cout( "fsize = " + SysLib.fsize( fd ) + " (wrong)\n" );
+      return false;
+    }
+    for ( int pass = 0; pass < 2; pass++ ) {
+      byte[] tmpBuf = new byte[length];
+      SysLib.seek( fd, 0, 0 );
+      int read = SysLib.read( fd, tmpBuf );
+      if ( read != length ) {
+        SysLib.cout( "read = " + read + " (wrong)\n" );
+        return false;
+      }
+      for ( int i = 0; i < length; i++ ) {
+        if ( tmpBuf[i] != file[i] ) {
+          SysLib.cout( "byte " + i + " = " + tmpBuf[i] + " (wrong)\n" );
+          return false;
+        }
+      }
+      SysLib.flush( );
+    }
+    SysLib.cout( "successfully completed\n" );
+    return true;
+  }
+}
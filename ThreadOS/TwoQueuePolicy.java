@@ -0,0 +1,74 @@
+/** ========================================== TwoQueuePolicy.java ==============================================
+ * SUMMARY
+ * 2Q (Johnson and Shasha). A block seen for the first time goes on a
+ * short FIFO, A1in, and leaves it without a hit counting for anything;
+ * its number is then remembered on A1out. Only a block missed again while
+ * on A1out enters Am, the LRU list of the hot set, so one sequential scan
+ * passes through A1in without pushing the hot set out.
+ */
+
+public class TwoQueuePolicy implements CachePolicy {
+    private final static int A1IN = 0;   // resident, seen once
+    private final static int AM   = 1;   // resident, hot
+
+    private SlotList resident;           // oldest / least recent first
+    private GhostList a1out;             // evicted from A1in
+    private int blockOf[];               // block held by each frame
+    private int kin;                     // A1in is trimmed above this size
+
+    public TwoQueuePolicy( int frames ) {
+        resident = new SlotList( frames, 2 );
+        a1out = new GhostList( Math.max( 1, frames / 2 ), 1 );
+        blockOf = new int[frames];
+        kin = Math.max( 1, frames / 4 );
+    }
+
+    public String name( ) {
+        return "2q";
+    }
+
+    public int victim( int blockId, Frames candidates ) {
+        int in = first( A1IN, candidates );
+        int am = first( AM, candidates );
+        int frame;
+        if ( in != NONE && ( resident.size( A1IN ) > kin || am == NONE ) ) {
+            frame = in;
+            a1out.add( 0, blockOf[frame] );
+        } else if ( am != NONE )
+            frame = am;
+        else
+            return NONE;
+        resident.remove( frame );
+        return frame;
+    }
+
+    // oldest frame of list that may go, or NONE
+    private int first( int list, Frames candidates ) {
+        int frame = resident.first( list );
+        while ( frame != NONE && !candidates.evictable( frame ) )
+            frame = resident.next( frame );
+        return frame;
+    }
+
+    public void inserted( int frame, int blockId ) {
+        blockOf[frame] = blockId;
+        if ( a1out.listOf( blockId ) != SlotList.NONE ) {
+            a1out.remove( blockId );
+            resident.addLast( AM, frame );
+        } else
+            resident.addLast( A1IN, frame );
+    }
+
+    public void referenced( int frame ) {
+        if ( resident.listOf( frame ) == AM )
+            resident.addLast( AM, frame );
+    }
+
+    public void dirtied( int frame ) { }
+
+    public void cleaned( int frame ) { }
+
+    public void removed( int frame ) {
+        resident.remove( frame );
+    }
+}